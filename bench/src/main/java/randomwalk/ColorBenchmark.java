@@ -0,0 +1,54 @@
+package randomwalk;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the per-pixel color functions, with ColorKernel and with the reference float math.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class ColorBenchmark {
+  // colors cycled through so the inputs can't be constant folded
+  final static int COLORS = 1024;
+
+  @Param( { "false", "true" } )
+  boolean m_reference;
+
+  WalkEngine m_engine;
+  RandomSource m_rand;
+  int[] m_colors;
+  int m_next;
+
+  @Setup
+  public void setup() {
+    m_engine = new WalkEngine( RandomSource.create( RandomSource.DEFAULT, 42 ) );
+    m_engine.setReferenceColor( m_reference );
+    m_rand = m_engine.newStream();
+
+    Random rand = new Random( 42 );
+    m_colors = new int[ COLORS ];
+    for ( int i = 0; i < COLORS; ++i )
+      m_colors[i] = 0xff000000 | rand.nextInt( 1 << 24 );
+  }
+
+  private int next() { return m_colors[ m_next++ & ( COLORS - 1 ) ]; }
+
+  @Benchmark
+  public int perturbColor() { return m_engine.perturbColor( m_rand, next(), 1, 1, 1 ); }
+
+  @Benchmark
+  public int offsetColor() { return m_engine.offsetColor( next(), 1, -1, 1 ); }
+
+  @Benchmark
+  public int interpColor() { return m_engine.interpColor( next(), next(), .3f ); }
+
+  @Benchmark
+  public int interpColorKnockout() { return m_engine.interpColorKnockout( next() & 0xffffff00, next(), .3f ); }
+}
@@ -0,0 +1,40 @@
+package randomwalk;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures ColorSpace.mutate() of each color space.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class ColorSpaceBenchmark {
+  @Param( { "r", "g", "b", "y", "rgb" } )
+  String m_space;
+
+  WalkEngine.ColorSpace m_cspace;
+
+  @Setup
+  public void setup() {
+    WalkEngine engine = new WalkEngine( RandomSource.create( RandomSource.DEFAULT, 42 ) );
+
+    if ( m_space.equals( "r" ) )
+      m_cspace = engine.new RWalk();
+    else if ( m_space.equals( "g" ) )
+      m_cspace = engine.new GWalk();
+    else if ( m_space.equals( "b" ) )
+      m_cspace = engine.new BWalk();
+    else if ( m_space.equals( "y" ) )
+      m_cspace = engine.new YWalk();
+    else
+      m_cspace = engine.new RGBWalk();
+  }
+
+  @Benchmark
+  public int mutate() { return m_cspace.mutate(); }
+}
@@ -0,0 +1,30 @@
+package randomwalk;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures zeroMeanRandom() on each random source, the draw every walker step makes at least twice.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class RandomBenchmark {
+  @Param( { "jdk", "splittable", "xoroshiro", "pcg", "sliced-xoroshiro", "sliced-pcg" } )
+  String m_source;
+
+  @Param( { "1", "8" } )
+  int m_radius;
+
+  WalkEngine m_engine;
+
+  @Setup
+  public void setup() { m_engine = new WalkEngine( RandomSource.create( m_source, 42 ) ); }
+
+  @Benchmark
+  public int zeroMeanRandom() { return m_engine.zeroMeanRandom( m_radius ); }
+}
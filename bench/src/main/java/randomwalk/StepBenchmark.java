@@ -0,0 +1,30 @@
+package randomwalk;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures RandomWalk.update(), one step of one walker without drawing.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class StepBenchmark {
+  WalkEngine.RandomWalk m_walk;
+
+  @Setup
+  public void setup() {
+    WalkEngine engine = new WalkEngine( RandomSource.create( RandomSource.DEFAULT, 42 ) );
+    m_walk = engine.new GenericWalker( WalkEngine.SIDE / 2, WalkEngine.SIDE / 2, engine.new RGBWalk() );
+  }
+
+  @Benchmark
+  public long update() {
+    m_walk.update();
+    return m_walk.index();
+  }
+}
@@ -0,0 +1,80 @@
+package randomwalk;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures a tick of a draw list of walkers of one kind. A tick steps every walker once, so steps per second is
+ * the tick rate times the walker count. Run with -prof gc to see the allocation rate.
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+@State( Scope.Thread )
+public class WalkerBenchmark {
+  // generic, blending, perturb and noisy are RandomWalk objects, the pool- kinds one WalkerPool
+  @Param( { "generic", "blending", "perturb", "noisy", "pool-generic", "pool-blending", "pool-perturb", "pool-noisy" } )
+  String m_kind;
+
+  @Param( { "1", "1000", "100000" } )
+  int m_walkers;
+
+  // the canvas side, to see how throughput scales with the canvas footprint
+  @Param( { "256", "1024", "4096" } )
+  int m_side;
+
+  WalkEngine m_engine;
+
+  @Setup
+  public void setup() {
+    m_engine = new WalkEngine( RandomSource.create( RandomSource.DEFAULT, 42 ), m_side, m_side );
+
+    int[] pixels = new int[ m_side * m_side ];
+    Arrays.fill( pixels, 0xff000000 );
+    m_engine.setPixels( pixels );
+
+    int c = m_side / 2;
+
+    if ( m_kind.startsWith( "pool-" ) ) {
+      WalkEngine.WalkerPool pool = m_engine.new WalkerPool( poolType( m_kind.substring( 5 ) ),
+          WalkEngine.WalkerPool.RGB_SPACE, m_walkers );
+
+      for ( int i = 0; i < m_walkers; ++i )
+        pool.add( c, c, pool.initialColor(), .3f );
+
+      m_engine.add( pool );
+    } else {
+      for ( int i = 0; i < m_walkers; ++i )
+        m_engine.add( walker( c ) );
+    }
+  }
+
+  private WalkEngine.RandomWalk walker( int c ) {
+    if ( m_kind.equals( "generic" ) )
+      return m_engine.new GenericWalker( c, c, m_engine.new RGBWalk() );
+    if ( m_kind.equals( "blending" ) )
+      return m_engine.new BlendingWalker( c, c, m_engine.new RGBWalk(), .3f );
+    if ( m_kind.equals( "perturb" ) )
+      return m_engine.new PerturbWalker( c, c, 1, 1, 1 );
+
+    return m_engine.new NoisyPen( c, c, m_engine.color( 127, 127, 127 ), 1 );
+  }
+
+  private int poolType( String kind ) {
+    if ( kind.equals( "generic" ) )
+      return WalkEngine.WalkerPool.GENERIC;
+    if ( kind.equals( "blending" ) )
+      return WalkEngine.WalkerPool.BLENDING;
+    if ( kind.equals( "perturb" ) )
+      return WalkEngine.WalkerPool.PERTURB;
+
+    return WalkEngine.WalkerPool.NOISY;
+  }
+
+  @Benchmark
+  public void tick() { m_engine.tick(); }
+}
@@ -0,0 +1,445 @@
+package randomwalk;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * Runs the walk without a PApplet window: ticks a WalkEngine over a plain canvas as fast as possible for a fixed
+ * number of steps and writes the result to a PNG. Needs no display, so it can render batches on servers.
+ *
+ * Usage: java -jar random-walk-cli.jar [--steps N] [--walkers N [--place spec]] [--threads N] [--width N] [--height N]
+ *   [--rng name] [--seed N] [--float-color] [--canvas file.raw | --tiled | --hdr] [--scene file] [--out file.png]
+ *   [--record dir|video [--record-every N] [--record-policy block|drop] [--fps N]] [--png-level 0-9]
+ *   [--checkpoint file [--checkpoint-every N] [--incremental]] [--resume file] [--heatmap file.png [--visits type]]
+ * or the same options after ProcessingRandomWalk --headless.
+ * where the random source name is one of jdk, splittable, xoroshiro or pcg, optionally prefixed with sliced-
+ * (the default is sliced-xoroshiro). --place spawns the --walkers in bulk by a placement, e.g. uniform or
+ * gaussian:100, see Placement.create(). --scene runs the walkers of a scene file, see Scene, instead of --walkers.
+ *
+ * --canvas draws into a file mapped outside the heap instead of an array, see Canvas.Mapped, for canvases larger
+ * than the heap (up to 65536x65536 and beyond). The file is the render, and --out is streamed from it a row at a
+ * time, so it never needs a copy of the canvas in the heap. --record writes a frame at every multiple of
+ * --record-every steps (100000 by default), counted from the start of the walk across checkpoints and resumes, to
+ * a PNG sequence in a directory, or through ffmpeg to a video file (.mp4, .mkv, .mov or .webm) at --fps (30 by
+ * default); --record-policy drop skips frames while the encoder is behind instead of waiting.
+ *
+ * --tiled draws into a sparse canvas that allocates 64x64 tiles as the walkers reach them, see Canvas.Tiled, and
+ * prints how many were allocated. --hdr draws into a float canvas that blending and perturbing walkers accumulate
+ * into without rounding, see Canvas.Hdr; it is rounded to colors only for the frames, checksum and PNG.
+ *
+ * --checkpoint writes the whole state of the walk to a file every --checkpoint-every steps (10000000 by default)
+ * and at the end, see Checkpoint. --resume restores a checkpoint before running, into the walkers set up by the
+ * other options, which must be the same as when it was written, and runs on to the same --steps total.
+ * --incremental makes the checkpoint a CheckpointLog that only appends the tiles drawn since the last checkpoint.
+ *
+ * --heatmap counts the visits of the walkers to every pixel, see VisitMap, and writes them as a log-scaled
+ * heatmap. --visits picks the counters: ints (the default) or shorts, which take half the memory and saturate at
+ * 65535 visits. Checkpoints do not hold the counts, so --heatmap cannot be combined with --resume.
+ *
+ * A given seed, random source and walker configuration renders the same canvas for any thread count; the seed
+ * and a CRC32 of the canvas are printed so runs can be reproduced and checked against golden images.
+ */
+public class HeadlessRenderer {
+  public final static long DEFAULT_STEPS = 10000000L;
+
+  WalkEngine m_engine;
+  Canvas m_canvas;
+
+  /**
+   * @param walkers the number of walkers to run in a WalkerPool, or 0 to run the default scene.
+   * @param rand the randomness source for the engine.
+   * @param width the width of the canvas.
+   * @param height the height of the canvas.
+   */
+  public HeadlessRenderer( int walkers, RandomSource rand, int width, int height ) {
+    this( walkers, rand, newArrayCanvas( width, height ) );
+  }
+
+  /**
+   * @param walkers the number of walkers to run in a WalkerPool, or 0 to run the default scene.
+   * @param rand the randomness source for the engine.
+   * @param canvas the canvas to draw into.
+   */
+  public HeadlessRenderer( int walkers, RandomSource rand, Canvas canvas ) {
+    this( walkers, null, rand, canvas );
+  }
+
+  /**
+   * @param walkers the number of walkers to run in a WalkerPool, or 0 to run the default scene.
+   * @param placement spawns the walkers of the pool in bulk, or null to add them one by one in the center.
+   * @param rand the randomness source for the engine.
+   * @param canvas the canvas to draw into.
+   */
+  public HeadlessRenderer( int walkers, Placement placement, RandomSource rand, Canvas canvas ) {
+    this( rand, canvas );
+
+    if ( walkers > 0 && placement != null )
+      m_engine.addPool( walkers, placement );
+    else if ( walkers > 0 )
+      m_engine.addPool( walkers );
+    else
+      m_engine.addDefaultWalkers();
+  }
+
+  /**
+   * @param scene the walkers to run, see Scene.
+   * @param rand the randomness source for the engine.
+   * @param canvas the canvas to draw into.
+   */
+  public HeadlessRenderer( Properties scene, RandomSource rand, Canvas canvas ) throws IOException {
+    this( rand, canvas );
+
+    Scene.apply( m_engine, scene );
+  }
+
+  HeadlessRenderer( RandomSource rand, Canvas canvas ) {
+    m_canvas = canvas;
+
+    m_engine = new WalkEngine( rand, canvas.width(), canvas.height() );
+    m_engine.setCanvas( canvas );
+  }
+
+  /** Runs steps ticks of the engine.
+   * @param steps the number of ticks to run.
+   */
+  public void run( long steps ) {
+    for ( long i = 0; i < steps; ++i )
+      m_engine.tick();
+  }
+
+  /** Runs steps ticks of the engine, recording a frame of the canvas whenever the tick count of the engine is a
+   * multiple of every. Frames follow the total count rather than the steps of this call, so running in chunks,
+   * or on from a checkpoint, records the same frames as one uninterrupted call.
+   * @param steps the number of ticks to run.
+   * @param recorder the recorder, for an array or HDR canvas.
+   * @param every the number of ticks between frames.
+   */
+  public void record( long steps, Recorder recorder, long every ) throws IOException {
+    Canvas.Hdr hdr = m_canvas instanceof Canvas.Hdr ? (Canvas.Hdr)m_canvas : null;
+    int[] pixels = hdr != null ? new int[ m_canvas.width() * m_canvas.height() ] : ( (Canvas.Array)m_canvas ).pixels();
+
+    for ( long end = m_engine.ticks() + steps; m_engine.ticks() < end; ) {
+      long ticks = m_engine.ticks();
+      run( Math.min( every - ticks % every, end - ticks ) );
+
+      if ( m_engine.ticks() % every == 0 ) {
+        if ( hdr != null )
+          hdr.toneMap( pixels, 0, 0, hdr.width(), hdr.height() );
+        recorder.offer( pixels );
+      }
+    }
+  }
+
+  /** Returns a canvas on the heap cleared to opaque black, like background( 0 ) in the sketch.
+   */
+  static Canvas newArrayCanvas( int width, int height ) {
+    int[] pixels = new int[ width * height ];
+    Arrays.fill( pixels, 0xff000000 );
+
+    return new Canvas.Array( width, height, pixels );
+  }
+
+  /** Returns the CRC32 of the canvas, to compare runs without comparing images.
+   */
+  public long checksum() {
+    CRC32 crc = new CRC32();
+
+    // a row at a time, a mapped canvas may not fit in the heap
+    int width = m_canvas.width();
+    ByteBuffer row = ByteBuffer.allocate( width * 4 );
+    for ( long y = 0; y < m_canvas.height(); ++y ) {
+      row.clear();
+      for ( int x = 0; x < width; ++x )
+        row.putInt( m_canvas.get( y * width + x ) );
+      crc.update( row.array() );
+    }
+
+    return crc.getValue();
+  }
+
+  /** Writes the visit counts of the engine as a heatmap, see VisitMap.toneMap().
+   * @param file the PNG file to write.
+   * @param level the deflate level, from 0 (fastest) to 9 (smallest).
+   */
+  public void saveHeatmap( File file, int level ) throws IOException {
+    VisitMap visits = m_engine.visits();
+    BufferedImage img = new BufferedImage( visits.width(), visits.height(), BufferedImage.TYPE_INT_RGB );
+
+    visits.toneMap( ( (DataBufferInt)img.getRaster().getDataBuffer() ).getData(), VisitMap.heat() );
+    SnapshotSaver.writePng( img, file, level );
+  }
+
+  /** Writes the canvas to a PNG file.
+   * @param file the file to write.
+   */
+  public void save( File file ) throws IOException { save( file, SnapshotSaver.DEFAULT_LEVEL ); }
+
+  /** Writes the canvas to a PNG file, streamed from the canvas a row at a time, so a mapped canvas larger than
+   * the heap is written without a copy in it.
+   * @param file the file to write.
+   * @param level the deflate level, from 0 (fastest) to 9 (smallest).
+   */
+  public void save( File file, int level ) throws IOException { SnapshotSaver.writePng( m_canvas, file, level ); }
+
+  static public void main( String[] args ) {
+    System.setProperty( "java.awt.headless", "true" );
+
+    long steps = DEFAULT_STEPS;
+    int walkers = 0;
+    int threads = 1;
+    int width = WalkEngine.SIDE;
+    int height = WalkEngine.SIDE;
+    String rng = RandomSource.DEFAULT;
+    long seed = System.nanoTime();
+    boolean referenceColor = false;
+    String out = System.currentTimeMillis() + ".png";
+    String canvas = null;
+    boolean tiled = false;
+    boolean hdr = false;
+    String scene = null;
+    String place = null;
+    String record = null;
+    long recordEvery = 100000;
+    int recordPolicy = Recorder.BLOCK;
+    int fps = 30;
+    int pngLevel = SnapshotSaver.DEFAULT_LEVEL;
+    String checkpoint = null;
+    long checkpointEvery = 10000000;
+    String resume = null;
+    boolean incremental = false;
+    String heatmap = null;
+    String visits = "ints";
+
+    for ( int i = 0; i < args.length; ++i ) {
+      if ( args[i].equals( "--steps" ) && i + 1 < args.length )
+        steps = Long.parseLong( args[ ++i ] );
+      else if ( args[i].equals( "--walkers" ) && i + 1 < args.length )
+        walkers = Integer.parseInt( args[ ++i ] );
+      else if ( args[i].equals( "--threads" ) && i + 1 < args.length )
+        threads = Integer.parseInt( args[ ++i ] );
+      else if ( args[i].equals( "--width" ) && i + 1 < args.length )
+        width = Integer.parseInt( args[ ++i ] );
+      else if ( args[i].equals( "--height" ) && i + 1 < args.length )
+        height = Integer.parseInt( args[ ++i ] );
+      else if ( args[i].equals( "--rng" ) && i + 1 < args.length )
+        rng = args[ ++i ];
+      else if ( args[i].equals( "--seed" ) && i + 1 < args.length )
+        seed = Long.parseLong( args[ ++i ] );
+      else if ( args[i].equals( "--float-color" ) )
+        referenceColor = true;
+      else if ( args[i].equals( "--canvas" ) && i + 1 < args.length )
+        canvas = args[ ++i ];
+      else if ( args[i].equals( "--place" ) && i + 1 < args.length )
+        place = args[ ++i ];
+      else if ( args[i].equals( "--scene" ) && i + 1 < args.length )
+        scene = args[ ++i ];
+      else if ( args[i].equals( "--record" ) && i + 1 < args.length )
+        record = args[ ++i ];
+      else if ( args[i].equals( "--record-every" ) && i + 1 < args.length )
+        recordEvery = Long.parseLong( args[ ++i ] );
+      else if ( args[i].equals( "--record-policy" ) && i + 1 < args.length )
+        recordPolicy = args[ ++i ].equals( "drop" ) ? Recorder.DROP : Recorder.BLOCK;
+      else if ( args[i].equals( "--fps" ) && i + 1 < args.length )
+        fps = Integer.parseInt( args[ ++i ] );
+      else if ( args[i].equals( "--png-level" ) && i + 1 < args.length )
+        pngLevel = Integer.parseInt( args[ ++i ] );
+      else if ( args[i].equals( "--checkpoint" ) && i + 1 < args.length )
+        checkpoint = args[ ++i ];
+      else if ( args[i].equals( "--checkpoint-every" ) && i + 1 < args.length )
+        checkpointEvery = Long.parseLong( args[ ++i ] );
+      else if ( args[i].equals( "--resume" ) && i + 1 < args.length )
+        resume = args[ ++i ];
+      else if ( args[i].equals( "--incremental" ) )
+        incremental = true;
+      else if ( args[i].equals( "--heatmap" ) && i + 1 < args.length )
+        heatmap = args[ ++i ];
+      else if ( args[i].equals( "--visits" ) && i + 1 < args.length )
+        visits = args[ ++i ];
+      else if ( args[i].equals( "--tiled" ) )
+        tiled = true;
+      else if ( args[i].equals( "--hdr" ) )
+        hdr = true;
+      else if ( args[i].equals( "--out" ) && i + 1 < args.length )
+        out = args[ ++i ];
+    }
+
+    Properties walkerScene = null;
+    if ( scene != null ) {
+      try {
+        walkerScene = Scene.read( new File( scene ) );
+      } catch ( IOException e ) {
+        System.err.println( "could not read " + scene + ": " + e.getMessage() );
+        System.exit( 1 );
+        return;
+      }
+    }
+
+    Canvas target;
+    try {
+      target = canvas != null ? new Canvas.Mapped( new File( canvas ), width, height )
+          : tiled ? new Canvas.Tiled( width, height ) : hdr ? new Canvas.Hdr( width, height )
+          : newArrayCanvas( width, height );
+    } catch ( IOException e ) {
+      System.err.println( "could not map " + canvas + ": " + e.getMessage() );
+      System.exit( 1 );
+      return;
+    }
+
+    RandomSource rand = RandomSource.create( rng, seed );
+    HeadlessRenderer renderer;
+    try {
+      renderer = walkerScene != null ? new HeadlessRenderer( walkerScene, rand, target )
+          : new HeadlessRenderer( walkers, place != null ? Placement.create( place ) : null, rand, target );
+    } catch ( IllegalArgumentException | IOException e ) {
+      System.err.println( "bad walkers: " + e.getMessage() );
+      System.exit( 1 );
+      return;
+    }
+
+    if ( resume != null ) {
+      // checkpoints do not hold the visit counts, so a resumed heatmap would miss every visit before it
+      if ( heatmap != null ) {
+        System.err.println( "cannot resume with --heatmap: checkpoints do not hold the visit counts" );
+        System.exit( 1 );
+      }
+
+      try {
+        Checkpoint.read( renderer.m_engine, new File( resume ) );
+      } catch ( IOException | UnsupportedOperationException e ) {
+        System.err.println( "could not resume from " + resume + ": " + e.getMessage() );
+        System.exit( 1 );
+      }
+
+      System.out.println( "resumed at step " + renderer.m_engine.ticks() );
+    }
+
+    // fail now rather than at the first checkpoint if the random source cannot be saved
+    CheckpointLog log = null;
+    if ( checkpoint != null ) {
+      try {
+        rand.save( new DataOutputStream( new ByteArrayOutputStream() ) );
+        if ( incremental )
+          log = new CheckpointLog( renderer.m_engine, new File( checkpoint ) );
+      } catch ( IOException | UnsupportedOperationException e ) {
+        System.err.println( "cannot checkpoint to " + checkpoint + ": " + e.getMessage() );
+        System.exit( 1 );
+      }
+    }
+
+    if ( heatmap != null ) {
+      try {
+        renderer.m_engine.setVisits( VisitMap.create( visits, width, height ) );
+      } catch ( IllegalArgumentException e ) {
+        System.err.println( "cannot count visits: " + e.getMessage() );
+        System.exit( 1 );
+      }
+    }
+
+    renderer.m_engine.setThreads( threads );
+    renderer.m_engine.setReferenceColor( referenceColor );
+
+    Recorder recorder = null;
+    if ( record != null ) {
+      if ( !( target instanceof Canvas.Array || target instanceof Canvas.Hdr ) ) {
+        System.err.println( "--record needs a canvas on the heap" );
+        System.exit( 1 );
+      }
+
+      try {
+        recorder = new Recorder( Recorder.create( record, width, height, fps, pngLevel ), width * height, 4,
+            recordPolicy );
+      } catch ( IOException e ) {
+        System.err.println( "could not record to " + record + ": " + e.getMessage() );
+        System.exit( 1 );
+      }
+    }
+
+    long resumed = renderer.m_engine.ticks();
+    long start = System.nanoTime();
+    try {
+      for ( long done = resumed; done < steps; ) {
+        // checkpoints fall on multiples of --checkpoint-every, so a resumed run writes them where the first would have
+        long chunk = steps - done;
+        if ( checkpoint != null )
+          chunk = Math.min( chunk, checkpointEvery - done % checkpointEvery );
+
+        if ( recorder != null )
+          renderer.record( chunk, recorder, recordEvery );
+        else
+          renderer.run( chunk );
+        done += chunk;
+
+        if ( checkpoint != null ) {
+          try {
+            if ( log != null )
+              log.append();
+            else
+              Checkpoint.write( renderer.m_engine, new File( checkpoint ) );
+          } catch ( IOException e ) {
+            System.err.println( "could not checkpoint to " + checkpoint + ": " + e.getMessage() );
+            System.exit( 1 );
+          }
+        }
+      }
+
+      if ( recorder != null )
+        recorder.close();
+    } catch ( IOException e ) {
+      System.err.println( "could not record to " + record + ": " + e.getMessage() );
+      System.exit( 1 );
+    }
+
+    if ( log != null ) {
+      try {
+        log.close();
+      } catch ( IOException e ) {
+        System.err.println( "could not checkpoint to " + checkpoint + ": " + e.getMessage() );
+        System.exit( 1 );
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    renderer.m_engine.setThreads( 1 );
+    steps -= Math.min( steps, resumed );
+
+    if ( recorder != null )
+      System.out.println( recorder.recorded() + " frames recorded, " + recorder.dropped() + " dropped" );
+
+    System.out.println( steps + " steps in " + ( elapsed / 1000000 ) + " ms ("
+        + (long)( steps / ( elapsed / 1e9 ) ) + " steps/s)" );
+    System.out.println( "seed " + seed + ", canvas crc32 " + Long.toHexString( renderer.checksum() ) );
+
+    if ( renderer.m_canvas instanceof Canvas.Mapped )
+      ( (Canvas.Mapped)renderer.m_canvas ).flush();
+
+    if ( renderer.m_canvas instanceof Canvas.Tiled ) {
+      Canvas.Tiled t = (Canvas.Tiled)renderer.m_canvas;
+      System.out.println( t.materialized() + " of " + t.tiles() + " tiles allocated" );
+    }
+
+    if ( heatmap != null ) {
+      System.out.println( "at most " + renderer.m_engine.visits().max() + " visits to a pixel" );
+
+      try {
+        renderer.saveHeatmap( new File( heatmap ), pngLevel );
+      } catch ( IOException e ) {
+        System.err.println( "could not write " + heatmap + ": " + e.getMessage() );
+        System.exit( 1 );
+      }
+    }
+
+    try {
+      renderer.save( new File( out ), pngLevel );
+    } catch ( IOException e ) {
+      System.err.println( "could not write " + out + ": " + e.getMessage() );
+      System.exit( 1 );
+    }
+  }
+}
@@ -0,0 +1,247 @@
+package randomwalk;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records frames of the canvas on a background thread, so encoding never runs on the thread that draws.
+ * offer() copies a frame into one of a fixed number of buffers and queues it; the recording thread writes the
+ * queued frames to a Sink in order and hands the buffers back. When every buffer is queued, the DROP policy skips
+ * the frame and the BLOCK policy waits for the recorder to catch up.
+ */
+public class Recorder {
+  // what offer() does when the queue is full
+  public final static int DROP = 0;
+  public final static int BLOCK = 1;
+
+  /** Where the recorded frames go.
+   */
+  public interface Sink {
+    /** Writes one frame, width * height colors in rows. */
+    public void write( int[] pixels, long frame ) throws IOException;
+
+    /** Finishes the recording. */
+    public void close() throws IOException;
+  }
+
+  //===========================================================
+  //========================= SINKS ===========================
+  //===========================================================
+
+  /** Writes each frame to a numbered PNG in a directory, frame-000000.png onwards.
+   */
+  public static class PngSequence implements Sink {
+    File m_dir;
+    BufferedImage m_image;
+    int[] m_data;
+    int m_level;
+
+    /**
+     * @param level the deflate level of the PNGs, from 0 (fastest) to 9 (smallest).
+     */
+    public PngSequence( File dir, int width, int height, int level ) throws IOException {
+      if ( !dir.isDirectory() && !dir.mkdirs() )
+        throw new IOException( "could not create " + dir );
+
+      m_dir = dir;
+      m_image = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+      m_data = ( (DataBufferInt)m_image.getRaster().getDataBuffer() ).getData();
+      m_level = level;
+    }
+
+    public void write( int[] pixels, long frame ) throws IOException {
+      System.arraycopy( pixels, 0, m_data, 0, m_data.length );
+      SnapshotSaver.writePng( m_image, new File( m_dir, String.format( "frame-%06d.png", frame ) ), m_level );
+    }
+
+    public void close() {}
+  }
+
+  /** Pipes raw RGB frames to an ffmpeg process that encodes them into a video.
+   */
+  public static class Ffmpeg implements Sink {
+    Process m_process;
+    OutputStream m_out;
+    byte[] m_rgb;
+
+    /**
+     * @param file the video to write; ffmpeg picks the container from its extension.
+     * @param fps the frame rate of the video.
+     */
+    public Ffmpeg( File file, int width, int height, int fps ) throws IOException {
+      ProcessBuilder builder = new ProcessBuilder( "ffmpeg", "-loglevel", "error", "-y",
+          "-f", "rawvideo", "-pix_fmt", "rgb24", "-s", width + "x" + height, "-r", "" + fps, "-i", "-",
+          "-pix_fmt", "yuv420p", file.getPath() );
+      builder.redirectOutput( ProcessBuilder.Redirect.INHERIT );
+      builder.redirectError( ProcessBuilder.Redirect.INHERIT );
+
+      m_process = builder.start();
+      m_out = new BufferedOutputStream( m_process.getOutputStream(), 1 << 20 );
+      m_rgb = new byte[ width * height * 3 ];
+    }
+
+    public void write( int[] pixels, long frame ) throws IOException {
+      for ( int i = 0, j = 0; i < pixels.length; ++i, j += 3 ) {
+        int c = pixels[i];
+        m_rgb[ j ] = (byte)( c >> 16 );
+        m_rgb[ j + 1 ] = (byte)( c >> 8 );
+        m_rgb[ j + 2 ] = (byte)c;
+      }
+
+      m_out.write( m_rgb );
+    }
+
+    public void close() throws IOException {
+      m_out.close();
+
+      try {
+        if ( m_process.waitFor() != 0 )
+          throw new IOException( "ffmpeg exited with " + m_process.exitValue() );
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /** Creates a sink for a path: an ffmpeg pipe for a video file (.mp4, .mkv, .mov, .webm), a PNG sequence in a
+   * directory otherwise.
+   * @param level the deflate level of a PNG sequence.
+   */
+  public static Sink create( String path, int width, int height, int fps, int level ) throws IOException {
+    String lower = path.toLowerCase();
+
+    if ( lower.endsWith( ".mp4" ) || lower.endsWith( ".mkv" ) || lower.endsWith( ".mov" )
+        || lower.endsWith( ".webm" ) )
+      return new Ffmpeg( new File( path ), width, height, fps );
+
+    return new PngSequence( new File( path ), width, height, level );
+  }
+
+  //===========================================================
+  //======================== RECORDER =========================
+  //===========================================================
+
+  // a queued frame
+  static class Frame {
+    int[] m_pixels;
+    long m_number;
+
+    Frame( int pixels ) { m_pixels = new int[ pixels ]; }
+  }
+
+  // marks the end of the recording in the queue
+  final static Frame END = new Frame( 0 );
+
+  Sink m_sink;
+  int m_policy;
+
+  // frames waiting to be written, and the buffers free to copy frames into
+  BlockingQueue<Frame> m_queue;
+  BlockingQueue<Frame> m_free;
+
+  Thread m_thread;
+  volatile IOException m_error;
+
+  long m_recorded;
+  long m_dropped;
+
+  /**
+   * @param sink where the frames go.
+   * @param pixels the number of pixels in a frame.
+   * @param buffers the number of frames that can wait to be written.
+   * @param policy DROP or BLOCK, what offer() does when they are all waiting.
+   */
+  public Recorder( Sink sink, int pixels, int buffers, int policy ) {
+    m_sink = sink;
+    m_policy = policy;
+
+    m_queue = new ArrayBlockingQueue<Frame>( buffers + 1 );
+    m_free = new ArrayBlockingQueue<Frame>( buffers );
+    for ( int i = 0; i < buffers; ++i )
+      m_free.add( new Frame( pixels ) );
+
+    m_thread = new Thread( new Runnable() {
+      public void run() { record(); }
+    }, "recorder" );
+    m_thread.setDaemon( true );
+    m_thread.start();
+  }
+
+  void record() {
+    try {
+      while ( true ) {
+        Frame frame = m_queue.take();
+        if ( frame == END )
+          break;
+
+        if ( m_error == null ) {
+          try {
+            m_sink.write( frame.m_pixels, frame.m_number );
+          } catch ( IOException e ) {
+            m_error = e;
+          }
+        }
+
+        m_free.add( frame );
+      }
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /** Queues a copy of a frame to be written.
+   * @param pixels the frame, width * height colors in rows. It can be reused as soon as this returns.
+   * @return false if the frame was dropped.
+   */
+  public boolean offer( int[] pixels ) throws IOException {
+    if ( m_error != null )
+      throw m_error;
+
+    Frame frame = m_free.poll();
+    if ( frame == null && m_policy == BLOCK ) {
+      try {
+        frame = m_free.take();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    if ( frame == null ) {
+      ++m_dropped;
+      return false;
+    }
+
+    System.arraycopy( pixels, 0, frame.m_pixels, 0, frame.m_pixels.length );
+    frame.m_number = m_recorded++;
+    m_queue.add( frame );
+    return true;
+  }
+
+  /** Returns the number of frames queued to be written. */
+  public long recorded() { return m_recorded; }
+
+  /** Returns the number of frames dropped because the recorder was behind. */
+  public long dropped() { return m_dropped; }
+
+  /** Writes the queued frames and finishes the recording.
+   */
+  public void close() throws IOException {
+    m_queue.add( END );
+
+    try {
+      m_thread.join();
+    } catch ( InterruptedException e ) {
+      Thread.currentThread().interrupt();
+    }
+
+    m_sink.close();
+    if ( m_error != null )
+      throw m_error;
+  }
+}
@@ -0,0 +1,298 @@
+package randomwalk;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Saves snapshots of the canvas as PNGs without stopping the walk: save() only copies the canvas, and the copy is
+ * encoded on a background thread. Snapshots are encoded one at a time, in the order they were taken. Only PENDING
+ * copies wait while one is encoded; snapshots taken while they do are skipped, so holding the snapshot key down
+ * on a large canvas does not fill the heap with copies.
+ */
+public class SnapshotSaver {
+  // the deflate level PNGs are written with unless told otherwise, zlib's default
+  public final static int DEFAULT_LEVEL = 6;
+
+  final static byte[] PNG_SIGNATURE = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+  // the size of the IDAT chunks of streamed PNGs
+  final static int CHUNK = 1 << 16;
+
+  // the number of snapshots that can wait while one is encoded
+  final static int PENDING = 1;
+
+  ThreadPoolExecutor m_executor;
+  int m_level;
+
+  /**
+   * @param level the deflate level of the PNGs, from 0 (fastest, largest) to 9 (slowest, smallest).
+   */
+  public SnapshotSaver( int level ) {
+    m_level = level;
+    m_executor = new ThreadPoolExecutor( 1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>( PENDING ),
+        new ThreadFactory() {
+          public Thread newThread( Runnable r ) {
+            Thread t = new Thread( r, "snapshots" );
+            t.setDaemon( true );
+            return t;
+          }
+        } );
+  }
+
+  /** Copies a canvas and writes the copy to a PNG in the background.
+   * @param pixels the canvas, width * height colors in rows. It can be drawn into as soon as this returns.
+   * @param file the file to write.
+   * @return the file, once it has been written. A failure is also printed to standard error. Null if the
+   *   snapshot was skipped because PENDING snapshots are already waiting.
+   */
+  public Future<File> save( int[] pixels, int width, int height, final File file ) {
+    // skipped before the copy is made, if possible
+    if ( m_executor.getQueue().remainingCapacity() == 0 ) {
+      System.err.println( "skipped " + file + ", still saving the snapshots before it" );
+      return null;
+    }
+
+    final BufferedImage img = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+    System.arraycopy( pixels, 0, ( (DataBufferInt)img.getRaster().getDataBuffer() ).getData(), 0, width * height );
+
+    Callable<File> task = new Callable<File>() {
+      public File call() throws IOException {
+        // callers rarely wait on the result, so failures are printed as well as thrown
+        try {
+          writePng( img, file, m_level );
+        } catch ( IOException | RuntimeException e ) {
+          System.err.println( "could not save " + file + ": " + e.getMessage() );
+          throw e;
+        }
+
+        return file;
+      }
+    };
+
+    try {
+      return m_executor.submit( task );
+    } catch ( RejectedExecutionException e ) {
+      // another thread filled the queue since the check, or the saver has been shut down
+      System.err.println( "skipped " + file + ", the snapshot saver is busy or shut down" );
+      return null;
+    }
+  }
+
+  /** Waits for the snapshots that are being saved and stops the background thread.
+   */
+  public void shutdown() throws InterruptedException {
+    m_executor.shutdown();
+    m_executor.awaitTermination( Long.MAX_VALUE, TimeUnit.SECONDS );
+  }
+
+  /** Writes an image to a PNG with the given deflate level. Writers that cannot set the level (before Java 9)
+   * use their default.
+   * @param level the deflate level, from 0 to 9.
+   */
+  public static void writePng( BufferedImage img, File file, int level ) throws IOException {
+    ImageWriter writer = ImageIO.getImageWritersByFormatName( "png" ).next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+
+    if ( param.canWriteCompressed() ) {
+      // the PNG writer truncates 9 * ( 1 - quality ) to get the level, so aim for the middle of it
+      level = Math.max( 0, Math.min( 9, level ) );
+      param.setCompressionMode( ImageWriteParam.MODE_EXPLICIT );
+      param.setCompressionQuality( Math.max( 0, ( 8.5f - level ) / 9 ) );
+    }
+
+    // the output stream does not truncate an existing file
+    file.delete();
+
+    try ( ImageOutputStream out = ImageIO.createImageOutputStream( file ) ) {
+      if ( out == null )
+        throw new IOException( "could not open " + file );
+
+      writer.setOutput( out );
+      writer.write( null, new IIOImage( img, null, null ), param );
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  /** Writes a canvas to a PNG a row at a time, so a canvas outside the heap, or larger than it, is never copied
+   * into an image. Each row is filtered with the PNG filter that gives the smallest sum of filtered bytes, the
+   * heuristic of libpng and the ImageIO writer.
+   * @param level the deflate level, from 0 to 9.
+   */
+  public static void writePng( Canvas canvas, File file, int level ) throws IOException {
+    int width = canvas.width();
+    int height = canvas.height();
+    if ( 3L * width + 1 > Integer.MAX_VALUE - 8 )
+      throw new IOException( "canvas too wide for a PNG: " + width );
+
+    // the row, the row above it, and the filtered row with its filter type in front, best so far and scratch
+    byte[] row = new byte[ 3 * width ];
+    byte[] prior = new byte[ 3 * width ];
+    byte[] best = new byte[ 3 * width + 1 ];
+    byte[] filtered = new byte[ 3 * width + 1 ];
+
+    Deflater deflater = new Deflater( Math.max( 0, Math.min( 9, level ) ) );
+    try ( OutputStream out = new BufferedOutputStream( new FileOutputStream( file ), CHUNK ) ) {
+      out.write( PNG_SIGNATURE );
+
+      // 8 bits per channel, RGB, no interlacing
+      ByteBuffer header = ByteBuffer.allocate( 13 );
+      header.putInt( width ).putInt( height ).put( (byte)8 ).put( (byte)2 ).put( (byte)0 ).put( (byte)0 )
+          .put( (byte)0 );
+      writeChunk( out, "IHDR", header.array(), 13 );
+
+      try ( DeflaterOutputStream zip = new DeflaterOutputStream( new ChunkStream( out, "IDAT" ), deflater, CHUNK ) ) {
+        for ( long y = 0; y < height; ++y ) {
+          for ( int x = 0, j = 0; x < width; ++x, j += 3 ) {
+            int c = canvas.get( y * width + x );
+            row[ j ] = (byte)( c >> 16 );
+            row[ j + 1 ] = (byte)( c >> 8 );
+            row[ j + 2 ] = (byte)c;
+          }
+
+          long least = Long.MAX_VALUE;
+          for ( int type = 0; type < 5; ++type ) {
+            long sum = filter( type, row, prior, filtered );
+            if ( sum < least ) {
+              least = sum;
+              byte[] t = best;
+              best = filtered;
+              filtered = t;
+            }
+          }
+          zip.write( best );
+
+          byte[] t = prior;
+          prior = row;
+          row = t;
+        }
+      }
+
+      writeChunk( out, "IEND", new byte[ 0 ], 0 );
+    } finally {
+      deflater.end();
+    }
+  }
+
+  /** Filters a row of RGB bytes with a PNG filter type, from 0 (none) to 4 (Paeth).
+   * @param prior the row above, all 0 for the first row.
+   * @param out receives the type and the filtered row.
+   * @return the sum of the filtered bytes as signed values, smaller for rows that deflate better.
+   */
+  static long filter( int type, byte[] row, byte[] prior, byte[] out ) {
+    out[0] = (byte)type;
+    long sum = 0;
+
+    for ( int i = 0; i < row.length; ++i ) {
+      int a = i >= 3 ? row[ i - 3 ] & 0xff : 0;
+      int b = prior[i] & 0xff;
+      int c = i >= 3 ? prior[ i - 3 ] & 0xff : 0;
+
+      int predicted;
+      switch ( type ) {
+        case 1:
+          predicted = a;
+          break;
+        case 2:
+          predicted = b;
+          break;
+        case 3:
+          predicted = ( a + b ) >> 1;
+          break;
+        case 4:
+          int p = a + b - c;
+          int pa = Math.abs( p - a );
+          int pb = Math.abs( p - b );
+          int pc = Math.abs( p - c );
+          predicted = pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+          break;
+        default:
+          predicted = 0;
+          break;
+      }
+
+      byte f = (byte)( row[i] - predicted );
+      out[ i + 1 ] = f;
+      sum += Math.abs( f );
+    }
+
+    return sum;
+  }
+
+  static void writeChunk( OutputStream out, String type, byte[] data, int length ) throws IOException {
+    byte[] name = type.getBytes( StandardCharsets.US_ASCII );
+
+    CRC32 crc = new CRC32();
+    crc.update( name );
+    crc.update( data, 0, length );
+
+    ByteBuffer b = ByteBuffer.allocate( 4 );
+    out.write( b.putInt( 0, length ).array() );
+    out.write( name );
+    out.write( data, 0, length );
+    out.write( b.putInt( 0, (int)crc.getValue() ).array() );
+  }
+
+  // cuts what is written to it into chunks of one type. Closing it writes the last chunk and leaves the stream
+  // it writes to open.
+  static class ChunkStream extends OutputStream {
+    OutputStream m_out;
+    String m_type;
+    byte[] m_buf = new byte[ CHUNK ];
+    int m_length;
+
+    ChunkStream( OutputStream out, String type ) {
+      m_out = out;
+      m_type = type;
+    }
+
+    public void write( int b ) throws IOException {
+      if ( m_length == m_buf.length )
+        flushChunk();
+      m_buf[ m_length++ ] = (byte)b;
+    }
+
+    public void write( byte[] b, int off, int len ) throws IOException {
+      while ( len > 0 ) {
+        if ( m_length == m_buf.length )
+          flushChunk();
+
+        int n = Math.min( len, m_buf.length - m_length );
+        System.arraycopy( b, off, m_buf, m_length, n );
+        m_length += n;
+        off += n;
+        len -= n;
+      }
+    }
+
+    void flushChunk() throws IOException {
+      if ( m_length > 0 )
+        writeChunk( m_out, m_type, m_buf, m_length );
+      m_length = 0;
+    }
+
+    public void close() throws IOException { flushChunk(); }
+  }
+}
@@ -0,0 +1,97 @@
+package randomwalk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that a seed reproduces a render: the same canvas for any thread count, and the golden CRC of the default
+ * scene. Also checks that recordings keep their cadence across chunks and resumes.
+ */
+public class HeadlessRendererTest {
+  final static long SEED = 3;
+
+  @TempDir
+  File m_dir;
+
+  // counts the frames written to it
+  static class Counter implements Recorder.Sink {
+    int m_frames;
+
+    public void write( int[] pixels, long frame ) { ++m_frames; }
+
+    public void close() {}
+  }
+
+  /** Renders a pool of walkers on the given number of threads and returns the CRC of the canvas.
+   */
+  static long render( String source, int threads ) {
+    HeadlessRenderer renderer = new HeadlessRenderer( 10000, RandomSource.create( source, SEED ), 256, 256 );
+    renderer.m_engine.setThreads( threads );
+
+    try {
+      renderer.run( 500 );
+    } finally {
+      renderer.m_engine.setThreads( 1 );
+    }
+
+    return renderer.checksum();
+  }
+
+  @Test
+  public void sameCanvasForAnyThreadCount() {
+    for ( String source : new String[] { "sliced-xoroshiro", "pcg" } ) {
+      long crc = render( source, 1 );
+
+      assertEquals( crc, render( source, 2 ), source + " on 2 threads" );
+      assertEquals( crc, render( source, 4 ), source + " on 4 threads" );
+    }
+  }
+
+  @Test
+  public void defaultSceneMatchesGoldenChecksum() {
+    HeadlessRenderer renderer = new HeadlessRenderer( 0, RandomSource.create( RandomSource.DEFAULT, SEED ),
+        WalkEngine.SIDE, WalkEngine.SIDE );
+    renderer.run( HeadlessRenderer.DEFAULT_STEPS );
+
+    // the CRC printed by java -jar random-walk-cli.jar --seed 3
+    assertEquals( 0x27f8a990L, renderer.checksum() );
+  }
+
+  @Test
+  public void recordsOnTheTotalTickCount() throws IOException {
+    // one call
+    Counter whole = new Counter();
+    HeadlessRenderer renderer = new HeadlessRenderer( 100, RandomSource.create( "sliced-xoroshiro", SEED ), 256, 256 );
+    Recorder recorder = new Recorder( whole, 256 * 256, 2, Recorder.BLOCK );
+    renderer.record( 3000, recorder, 1000 );
+    recorder.close();
+    assertEquals( 3, whole.m_frames );
+
+    // in chunks that do not divide the cadence, as between checkpoints
+    Counter chunked = new Counter();
+    renderer = new HeadlessRenderer( 100, RandomSource.create( "sliced-xoroshiro", SEED ), 256, 256 );
+    recorder = new Recorder( chunked, 256 * 256, 2, Recorder.BLOCK );
+    renderer.record( 1500, recorder, 1000 );
+    renderer.record( 1500, recorder, 1000 );
+    recorder.close();
+    assertEquals( 3, chunked.m_frames );
+
+    // half of it, then on from a checkpoint in a new renderer
+    Counter resumed = new Counter();
+    File checkpoint = new File( m_dir, "walk.ckpt" );
+    renderer = new HeadlessRenderer( 100, RandomSource.create( "sliced-xoroshiro", SEED ), 256, 256 );
+    recorder = new Recorder( resumed, 256 * 256, 2, Recorder.BLOCK );
+    renderer.record( 1500, recorder, 1000 );
+    Checkpoint.write( renderer.m_engine, checkpoint );
+
+    renderer = new HeadlessRenderer( 100, RandomSource.create( "sliced-xoroshiro", SEED ), 256, 256 );
+    Checkpoint.read( renderer.m_engine, checkpoint );
+    renderer.record( 1500, recorder, 1000 );
+    recorder.close();
+    assertEquals( 3, resumed.m_frames );
+  }
+}
@@ -0,0 +1,85 @@
+package randomwalk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that PNGs streamed from a canvas read back as the canvas, and that snapshots taken faster than they are
+ * encoded are skipped rather than queued.
+ */
+public class SnapshotSaverTest {
+  @TempDir
+  File m_dir;
+
+  static void assertReadsBack( Canvas canvas, File file ) throws IOException {
+    BufferedImage img = ImageIO.read( file );
+    assertEquals( canvas.width(), img.getWidth() );
+    assertEquals( canvas.height(), img.getHeight() );
+
+    for ( int y = 0; y < canvas.height(); ++y )
+      for ( int x = 0; x < canvas.width(); ++x )
+        assertEquals( canvas.get( (long)y * canvas.width() + x ) | 0xff000000, img.getRGB( x, y ),
+            "pixel " + x + ", " + y );
+  }
+
+  @Test
+  public void streamedPngReadsBack() throws IOException {
+    // noise, gradients and flat runs, so every filter gets picked
+    RandomSource rand = new RandomSource.Xoroshiro( 1 );
+    Canvas canvas = HeadlessRenderer.newArrayCanvas( 67, 45 );
+    for ( int y = 0; y < 45; ++y )
+      for ( int x = 0; x < 67; ++x )
+        canvas.set( y * 67 + x, y < 15 ? 0xff000000 | rand.nextInt() : y < 30 ? ColorKernel.pack( x * 3, y * 5, 0 )
+            : 0xff203040 );
+
+    for ( int level = 0; level <= 9; level += 3 ) {
+      File file = new File( m_dir, "canvas-" + level + ".png" );
+      SnapshotSaver.writePng( canvas, file, level );
+      assertReadsBack( canvas, file );
+    }
+  }
+
+  @Test
+  public void streamedPngOfASparseCanvasReadsBack() throws IOException {
+    Canvas.Tiled canvas = new Canvas.Tiled( 300, 200 );
+    canvas.set( 150 * 300 + 250, 0xff123456 );
+
+    File file = new File( m_dir, "tiled.png" );
+    SnapshotSaver.writePng( canvas, file, SnapshotSaver.DEFAULT_LEVEL );
+    assertReadsBack( canvas, file );
+  }
+
+  @Test
+  public void skipsSnapshotsWhileBusy() throws InterruptedException, ExecutionException {
+    // noise at the slowest level, so the first snapshot is still encoding while the rest are taken
+    RandomSource rand = new RandomSource.Xoroshiro( 2 );
+    int[] pixels = new int[ 2048 * 2048 ];
+    for ( int i = 0; i < pixels.length; ++i )
+      pixels[i] = rand.nextInt();
+
+    SnapshotSaver saver = new SnapshotSaver( 9 );
+    int skipped = 0;
+    Future<?>[] saved = new Future<?>[ 10 ];
+    for ( int i = 0; i < saved.length; ++i ) {
+      saved[i] = saver.save( pixels, 2048, 2048, new File( m_dir, i + ".png" ) );
+      if ( saved[i] == null )
+        ++skipped;
+    }
+    saver.shutdown();
+
+    assertTrue( skipped > 0, "no snapshot was skipped" );
+    for ( Future<?> f : saved )
+      if ( f != null )
+        assertTrue( ( (File)f.get() ).isFile() );
+  }
+}
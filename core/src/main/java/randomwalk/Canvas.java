@@ -0,0 +1,315 @@
+package randomwalk;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * The pixels the walkers draw into: width * height packed ARGB colors in rows, laid out like PApplet.pixels.
+ * Indices are longs so canvases can hold more than 2^31 pixels. Implementations are not thread safe, but the
+ * parallel engine only writes disjoint bands from different threads.
+ */
+public interface Canvas {
+  public int width();
+
+  public int height();
+
+  /** Returns the color at index i, y * width + x. */
+  public int get( long i );
+
+  /** Sets the color at index i, y * width + x. */
+  public void set( long i, int c );
+
+  //===========================================================
+  //===================== IMPLEMENTATIONS =====================
+  //===========================================================
+
+  /** A canvas over an int array on the heap, such as PApplet.pixels.
+   */
+  public static class Array implements Canvas {
+    int m_width;
+    int m_height;
+    int[] m_pixels;
+
+    /**
+     * @param width the width of the canvas.
+     * @param height the height of the canvas.
+     * @param pixels a width * height array of colors.
+     */
+    public Array( int width, int height, int[] pixels ) {
+      if ( pixels.length != (long)width * height )
+        throw new IllegalArgumentException( "canvas has " + pixels.length + " pixels, expected " + width + "x" + height );
+
+      m_width = width;
+      m_height = height;
+      m_pixels = pixels;
+    }
+
+    public int width() { return m_width; }
+
+    public int height() { return m_height; }
+
+    public int get( long i ) { return m_pixels[ (int)i ]; }
+
+    public void set( long i, int c ) { m_pixels[ (int)i ] = c; }
+
+    public int[] pixels() { return m_pixels; }
+  }
+
+  /** A sparse canvas of 64x64 tiles, allocated on the first write to them, so memory scales with the area the
+   * walkers have visited rather than the canvas size. Tiles that were never written read as opaque black, like
+   * background( 0 ).
+   *
+   * The tiles store colors with the alpha byte inverted, so a new tile is already black without being filled.
+   * That also makes publishing a tile to other threads safe, since they can only see its default zeros.
+   */
+  public static class Tiled implements Canvas {
+    final static int TILE_SHIFT = 6;
+    final static int TILE_MASK = ( 1 << TILE_SHIFT ) - 1;
+
+    // flips the stored alpha, see above
+    final static int BLACK = 0xff000000;
+
+    int m_width;
+    int m_height;
+
+    // the shift that divides an index by the width for power-of-two widths, -1 for other widths
+    int m_widthShift;
+
+    // the tiles in rows, null until written
+    int m_tilesX;
+    int[][] m_tiles;
+    int m_materialized;
+
+    /**
+     * @param width the width of the canvas.
+     * @param height the height of the canvas.
+     */
+    public Tiled( int width, int height ) {
+      if ( width <= 0 || height <= 0 )
+        throw new IllegalArgumentException( "bad canvas size " + width + "x" + height );
+
+      m_width = width;
+      m_height = height;
+      m_widthShift = ( width & ( width - 1 ) ) == 0 ? Integer.numberOfTrailingZeros( width ) : -1;
+
+      m_tilesX = ( width + TILE_MASK ) >> TILE_SHIFT;
+      m_tiles = new int[ m_tilesX * ( ( height + TILE_MASK ) >> TILE_SHIFT ) ][];
+    }
+
+    public int width() { return m_width; }
+
+    public int height() { return m_height; }
+
+    public int get( long i ) {
+      int y = m_widthShift >= 0 ? (int)( i >>> m_widthShift ) : (int)( i / m_width );
+      int x = (int)( i - (long)y * m_width );
+      int[] tile = m_tiles[ ( y >> TILE_SHIFT ) * m_tilesX + ( x >> TILE_SHIFT ) ];
+
+      return tile == null ? BLACK : tile[ ( ( y & TILE_MASK ) << TILE_SHIFT ) | ( x & TILE_MASK ) ] ^ BLACK;
+    }
+
+    public void set( long i, int c ) {
+      int y = m_widthShift >= 0 ? (int)( i >>> m_widthShift ) : (int)( i / m_width );
+      int x = (int)( i - (long)y * m_width );
+      int t = ( y >> TILE_SHIFT ) * m_tilesX + ( x >> TILE_SHIFT );
+      int[] tile = m_tiles[t];
+
+      if ( tile == null )
+        tile = materialize( t );
+
+      tile[ ( ( y & TILE_MASK ) << TILE_SHIFT ) | ( x & TILE_MASK ) ] = c ^ BLACK;
+    }
+
+    // bands of the parallel engine can share a row of tiles, so allocation is locked
+    synchronized int[] materialize( int t ) {
+      if ( m_tiles[t] == null ) {
+        m_tiles[t] = new int[ 1 << ( 2 * TILE_SHIFT ) ];
+        ++m_materialized;
+      }
+
+      return m_tiles[t];
+    }
+
+    /** Returns the number of tiles that have been written. */
+    public synchronized int materialized() { return m_materialized; }
+
+    /** Returns the number of tiles the canvas would have if all of them were written. */
+    public int tiles() { return m_tiles.length; }
+
+    /** Returns whether the tile holding the pixel at x, y has been written; a tile that has not is all black. */
+    public boolean written( int x, int y ) {
+      return m_tiles[ ( y >> TILE_SHIFT ) * m_tilesX + ( x >> TILE_SHIFT ) ] != null;
+    }
+  }
+
+  /** A high-dynamic-range canvas on the heap: a float per channel, in three arrays, that blending and perturbing
+   * walkers draw into with blend() and offset() without rounding to 8 bits on every step. Colors are only rounded
+   * when they are read, by get() or toneMap() when a frame is displayed or exported, so long exposures of many
+   * faint blends keep their gradients. Starts out black.
+   */
+  public static class Hdr implements Canvas {
+    int m_width;
+    int m_height;
+
+    // the channels on [0, 255]
+    float[] m_r;
+    float[] m_g;
+    float[] m_b;
+
+    /**
+     * @param width the width of the canvas.
+     * @param height the height of the canvas.
+     */
+    public Hdr( int width, int height ) {
+      if ( width <= 0 || height <= 0 || (long)width * height > Integer.MAX_VALUE - 8 )
+        throw new IllegalArgumentException( "bad canvas size " + width + "x" + height );
+
+      m_width = width;
+      m_height = height;
+      m_r = new float[ width * height ];
+      m_g = new float[ width * height ];
+      m_b = new float[ width * height ];
+    }
+
+    public int width() { return m_width; }
+
+    public int height() { return m_height; }
+
+    public int get( long i ) {
+      int j = (int)i;
+      return ColorKernel.pack( (int)( m_r[j] + .5f ), (int)( m_g[j] + .5f ), (int)( m_b[j] + .5f ) );
+    }
+
+    public void set( long i, int c ) {
+      int j = (int)i;
+      m_r[j] = ColorKernel.red( c );
+      m_g[j] = ColorKernel.green( c );
+      m_b[j] = ColorKernel.blue( c );
+    }
+
+    /** Blends c into the color at index i by alpha, ignoring the black components of c, like
+     * WalkEngine.interpColorKnockout() but without rounding.
+     */
+    public void blend( long i, int c, float alpha ) {
+      int j = (int)i;
+      int r = ColorKernel.red( c );
+      int g = ColorKernel.green( c );
+      int b = ColorKernel.blue( c );
+
+      if ( r != 0 )
+        m_r[j] += alpha * ( r - m_r[j] );
+      if ( g != 0 )
+        m_g[j] += alpha * ( g - m_g[j] );
+      if ( b != 0 )
+        m_b[j] += alpha * ( b - m_b[j] );
+    }
+
+    /** Offsets the components of the color at index i, saturating at 0 and 255, like WalkEngine.offsetColor().
+     */
+    public void offset( long i, int dr, int dg, int db ) {
+      int j = (int)i;
+      m_r[j] = Math.max( 0, Math.min( 255, m_r[j] + dr ) );
+      m_g[j] = Math.max( 0, Math.min( 255, m_g[j] + dg ) );
+      m_b[j] = Math.max( 0, Math.min( 255, m_b[j] + db ) );
+    }
+
+    /** Rounds a region of the canvas to colors.
+     * @param pixels receives the colors, width * height in rows like PApplet.pixels; only the region is written.
+     * @param x the left of the region.
+     * @param y the top of the region.
+     * @param w the width of the region.
+     * @param h the height of the region.
+     */
+    public void toneMap( int[] pixels, int x, int y, int w, int h ) {
+      for ( int row = y; row < y + h; ++row )
+        for ( int j = row * m_width + x, end = j + w; j < end; ++j )
+          pixels[j] = get( j );
+    }
+
+    /** Clears the canvas to black. */
+    public void clear() {
+      Arrays.fill( m_r, 0 );
+      Arrays.fill( m_g, 0 );
+      Arrays.fill( m_b, 0 );
+    }
+  }
+
+  /** A canvas in a memory-mapped file, outside the heap, so it can be far larger than the heap and the OS pages
+   * in only the regions the walkers visit. The file is mapped in 1 GiB chunks, since a single mapping is limited
+   * to 2 GiB.
+   *
+   * The file holds the raw little-endian colors with the alpha byte inverted, so the zero pages of a new (sparse)
+   * file read as opaque black, like background( 0 ), without writing the whole file first. Reopening a file
+   * continues from the canvas in it.
+   */
+  public static class Mapped implements Canvas {
+    // the number of pixels in a chunk, a power of two
+    final static int CHUNK_SHIFT = 28;
+    final static long CHUNK_MASK = ( 1L << CHUNK_SHIFT ) - 1;
+
+    // flips the stored alpha, see above
+    final static int BLACK = 0xff000000;
+
+    int m_width;
+    int m_height;
+    MappedByteBuffer[] m_maps;
+    IntBuffer[] m_chunks;
+
+    /**
+     * @param file the file to map, created (or resized) to width * height * 4 bytes.
+     * @param width the width of the canvas.
+     * @param height the height of the canvas.
+     */
+    public Mapped( File file, int width, int height ) throws IOException {
+      if ( width <= 0 || height <= 0 )
+        throw new IllegalArgumentException( "bad canvas size " + width + "x" + height );
+
+      m_width = width;
+      m_height = height;
+
+      long pixels = (long)width * height;
+      int chunks = (int)( ( pixels + CHUNK_MASK ) >>> CHUNK_SHIFT );
+      m_maps = new MappedByteBuffer[ chunks ];
+      m_chunks = new IntBuffer[ chunks ];
+
+      // the mappings stay valid after the file is closed
+      try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ) {
+        raf.setLength( pixels * 4 );
+        FileChannel channel = raf.getChannel();
+
+        for ( int c = 0; c < chunks; ++c ) {
+          long start = (long)c << CHUNK_SHIFT;
+          long size = Math.min( CHUNK_MASK + 1, pixels - start );
+
+          m_maps[c] = channel.map( FileChannel.MapMode.READ_WRITE, start * 4, size * 4 );
+          m_chunks[c] = m_maps[c].order( ByteOrder.LITTLE_ENDIAN ).asIntBuffer();
+        }
+      }
+    }
+
+    public int width() { return m_width; }
+
+    public int height() { return m_height; }
+
+    public int get( long i ) {
+      return m_chunks[ (int)( i >>> CHUNK_SHIFT ) ].get( (int)( i & CHUNK_MASK ) ) ^ BLACK;
+    }
+
+    public void set( long i, int c ) {
+      m_chunks[ (int)( i >>> CHUNK_SHIFT ) ].put( (int)( i & CHUNK_MASK ), c ^ BLACK );
+    }
+
+    /** Writes the dirty pages back to the file.
+     */
+    public void flush() {
+      for ( MappedByteBuffer map : m_maps )
+        map.force();
+    }
+  }
+}
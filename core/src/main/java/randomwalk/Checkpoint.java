@@ -0,0 +1,593 @@
+package randomwalk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Saves the full state of a walk to a file and restores it, so long renders survive restarts and experiments can
+ * fork from a common state: the canvas, the tick count, the position, step, color state and parameters of every
+ * walker, and every random stream, the engine's included.
+ *
+ * A checkpoint holds state, not structure. It is restored into an engine set up the same way as the one it was
+ * written from (the same canvas size, random source and walkers, e.g. from the same scene), and read() checks
+ * that the random source and the walkers match. A walk resumed from a checkpoint renders exactly the canvas of one
+ * that never stopped, a Canvas.Hdr included, whose float channels are checkpointed as they are.
+ *
+ * The file is deflated and streamed out a canvas tile at a time, so canvases larger than the heap are never
+ * copied. It is written beside the target and renamed over it, so a crash while writing leaves the previous
+ * checkpoint intact. The Jdk and Splittable sources cannot read out their state, so walks on them cannot be
+ * checkpointed.
+ */
+public class Checkpoint {
+  // "RWCK", and the version of the format
+  final static int MAGIC = 0x5257434b;
+  final static int VERSION = 3;
+
+  // random sources are tagged with their index in SOURCES, plus SLICED if they are BitSliced
+  final static String[] SOURCES = { "jdk", "splittable", "xoroshiro", "pcg" };
+  final static int SLICED = 0x10;
+
+  // drawables are tagged with the WalkerPool walker types, and these for the rest
+  final static int WALK = 4;
+  final static int POOL = 5;
+
+  // the side of the canvas tiles, the same tiles as dirty regions
+  final static int TILE = WalkEngine.DIRTY_TILE;
+
+  // tiles are tagged as all black, as colors, or as the float channels of a Canvas.Hdr
+  final static int BLACK_TILE = 0;
+  final static int COLOR_TILE = 1;
+  final static int HDR_TILE = 2;
+
+  final static int BLACK = 0xff000000;
+
+  /** Writes a checkpoint of an engine. Must not be called during a tick.
+   * @param engine the engine.
+   * @param file the checkpoint, replaced once the new one is complete.
+   * @throws IllegalArgumentException if the draw list holds drawables other than the engine's walkers and pools.
+   * @throws UnsupportedOperationException if a random source cannot be checkpointed.
+   */
+  public static void write( WalkEngine engine, File file ) throws IOException {
+    File tmp = new File( file.getPath() + ".tmp" );
+
+    FileOutputStream stream = new FileOutputStream( tmp );
+    BufferedOutputStream buffered = new BufferedOutputStream( stream, 1 << 16 );
+    DeflaterOutputStream zip = new DeflaterOutputStream( buffered );
+
+    try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( zip, 1 << 16 ) ) ) {
+      out.writeInt( MAGIC );
+      out.writeInt( VERSION );
+      out.writeInt( engine.width() );
+      out.writeInt( engine.height() );
+      out.writeInt( sourceTag( engine.m_rand ) );
+      writeWalkers( out, engine );
+      writeCanvas( out, engine.canvas() );
+
+      out.flush();
+      zip.finish();
+      buffered.flush();
+
+      // on disk before it replaces the previous checkpoint
+      stream.getFD().sync();
+    }
+
+    Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+  }
+
+  /** Restores a checkpoint, or the latest checkpoint of a CheckpointLog, into an engine set up like the one it
+   * was written from, see above. Must not be called during a tick. If it fails, the engine is left partly
+   * restored.
+   * @param engine the engine, with its walkers added and its canvas set.
+   * @param file the checkpoint.
+   * @throws IOException if the file is not a checkpoint or does not match the engine.
+   */
+  public static void read( WalkEngine engine, File file ) throws IOException {
+    if ( CheckpointLog.isLog( file ) ) {
+      CheckpointLog.read( engine, file );
+      return;
+    }
+
+    try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new InflaterInputStream(
+        new BufferedInputStream( new FileInputStream( file ), 1 << 16 ) ), 1 << 16 ) ) ) {
+      if ( in.readInt() != MAGIC )
+        throw new IOException( file + " is not a checkpoint" );
+
+      int version = in.readInt();
+      if ( version != VERSION )
+        throw new IOException( file + " is a version " + version + " checkpoint, expected " + VERSION );
+
+      checkSize( in.readInt(), in.readInt(), engine );
+      checkSource( in.readInt(), engine );
+      readWalkers( in, engine );
+      readCanvas( in, engine.canvas() );
+    }
+  }
+
+  static void checkSize( int width, int height, WalkEngine engine ) throws IOException {
+    if ( width != engine.width() || height != engine.height() )
+      throw new IOException( "checkpoint canvas is " + width + "x" + height + ", expected " + engine.width() + "x"
+          + engine.height() );
+  }
+
+  /** Returns the tag of a random source, see SOURCES. The walkers' sources are split from the engine's, so its
+   * tag covers all of them.
+   */
+  static int sourceTag( RandomSource source ) {
+    int sliced = 0;
+    if ( source instanceof RandomSource.BitSliced ) {
+      source = ( (RandomSource.BitSliced)source ).m_source;
+      sliced = SLICED;
+    }
+
+    if ( source instanceof RandomSource.Jdk )
+      return sliced;
+    else if ( source instanceof RandomSource.Splittable )
+      return sliced | 1;
+    else if ( source instanceof RandomSource.Xoroshiro )
+      return sliced | 2;
+    else if ( source instanceof RandomSource.Pcg )
+      return sliced | 3;
+    else
+      throw new IllegalArgumentException( "cannot checkpoint a " + source.getClass().getName() );
+  }
+
+  static String sourceName( int tag ) {
+    int i = tag & ~SLICED;
+    String name = i >= 0 && i < SOURCES.length ? SOURCES[i] : "unknown source " + tag;
+    return ( tag & SLICED ) != 0 ? "sliced-" + name : name;
+  }
+
+  // the states of different sources can have the same size, and restore() would take one for another
+  static void checkSource( int tag, WalkEngine engine ) throws IOException {
+    int expected = sourceTag( engine.m_rand );
+    if ( tag != expected )
+      throw new IOException( "checkpoint random source is " + sourceName( tag ) + ", expected "
+          + sourceName( expected ) );
+  }
+
+  //===========================================================
+  //========================= WALKERS =========================
+  //===========================================================
+
+  /** Writes the state of the engine besides its canvas: the tick count, its random stream and the draw list.
+   */
+  static void writeWalkers( DataOutput out, WalkEngine engine ) throws IOException {
+    out.writeLong( engine.m_ticks );
+    engine.m_rand.save( out );
+
+    out.writeInt( engine.m_draw.size() );
+    for ( WalkEngine.Drawable d : engine.m_draw )
+      writeDrawable( out, d );
+  }
+
+  static void readWalkers( DataInput in, WalkEngine engine ) throws IOException {
+    engine.m_ticks = in.readLong();
+    engine.m_rand.restore( in );
+
+    ArrayList<WalkEngine.Drawable> draw = engine.m_draw;
+    int count = in.readInt();
+    if ( count != draw.size() )
+      throw new IOException( "checkpoint has " + count + " drawables, the engine " + draw.size() );
+
+    for ( WalkEngine.Drawable d : draw )
+      readDrawable( in, d );
+  }
+
+  static int tag( WalkEngine.Drawable d ) {
+    if ( d instanceof WalkEngine.WalkerPool )
+      return POOL;
+    else if ( d instanceof WalkEngine.GenericWalker )
+      return WalkEngine.WalkerPool.GENERIC;
+    else if ( d instanceof WalkEngine.BlendingWalker )
+      return WalkEngine.WalkerPool.BLENDING;
+    else if ( d instanceof WalkEngine.PerturbWalker )
+      return WalkEngine.WalkerPool.PERTURB;
+    else if ( d instanceof WalkEngine.NoisyPen )
+      return WalkEngine.WalkerPool.NOISY;
+    else if ( d instanceof WalkEngine.RandomWalk )
+      // other walks, like the sketch's, only have the state of the base class
+      return WALK;
+    else
+      throw new IllegalArgumentException( "cannot checkpoint a " + d.getClass().getName() );
+  }
+
+  static void writeDrawable( DataOutput out, WalkEngine.Drawable d ) throws IOException {
+    int tag = tag( d );
+    out.writeByte( tag );
+
+    if ( tag == POOL ) {
+      writePool( out, (WalkEngine.WalkerPool)d );
+      return;
+    }
+
+    WalkEngine.RandomWalk walk = (WalkEngine.RandomWalk)d;
+    out.writeInt( walk.m_x );
+    out.writeInt( walk.m_y );
+    out.writeInt( walk.m_xwalk );
+    out.writeInt( walk.m_ywalk );
+    walk.m_rand.save( out );
+
+    switch ( tag ) {
+      case WalkEngine.WalkerPool.GENERIC:
+        WalkEngine.GenericWalker g = (WalkEngine.GenericWalker)d;
+        writeSpace( out, g.m_cspace );
+        out.writeInt( g.m_next );
+        break;
+      case WalkEngine.WalkerPool.BLENDING:
+        WalkEngine.BlendingWalker b = (WalkEngine.BlendingWalker)d;
+        writeSpace( out, b.m_cspace );
+        out.writeFloat( b.m_alpha );
+        out.writeInt( b.m_next );
+        break;
+      case WalkEngine.WalkerPool.PERTURB:
+        WalkEngine.PerturbWalker p = (WalkEngine.PerturbWalker)d;
+        out.writeInt( p.m_pr );
+        out.writeInt( p.m_pg );
+        out.writeInt( p.m_pb );
+        out.writeInt( p.m_dr );
+        out.writeInt( p.m_dg );
+        out.writeInt( p.m_db );
+        break;
+      case WalkEngine.WalkerPool.NOISY:
+        WalkEngine.NoisyPen n = (WalkEngine.NoisyPen)d;
+        out.writeInt( n.m_color );
+        out.writeInt( n.m_r );
+        break;
+      default:
+        break;
+    }
+  }
+
+  static void readDrawable( DataInput in, WalkEngine.Drawable d ) throws IOException {
+    int tag = in.readByte();
+    expect( "drawable", tag, tag( d ) );
+
+    if ( tag == POOL ) {
+      readPool( in, (WalkEngine.WalkerPool)d );
+      return;
+    }
+
+    WalkEngine.RandomWalk walk = (WalkEngine.RandomWalk)d;
+    walk.m_x = in.readInt();
+    walk.m_y = in.readInt();
+    walk.m_xwalk = in.readInt();
+    walk.m_ywalk = in.readInt();
+    walk.m_rand.restore( in );
+
+    switch ( tag ) {
+      case WalkEngine.WalkerPool.GENERIC:
+        WalkEngine.GenericWalker g = (WalkEngine.GenericWalker)d;
+        readSpace( in, g.m_cspace );
+        g.m_next = in.readInt();
+        break;
+      case WalkEngine.WalkerPool.BLENDING:
+        WalkEngine.BlendingWalker b = (WalkEngine.BlendingWalker)d;
+        readSpace( in, b.m_cspace );
+        b.m_alpha = in.readFloat();
+        b.m_next = in.readInt();
+        break;
+      case WalkEngine.WalkerPool.PERTURB:
+        WalkEngine.PerturbWalker p = (WalkEngine.PerturbWalker)d;
+        p.m_pr = in.readInt();
+        p.m_pg = in.readInt();
+        p.m_pb = in.readInt();
+        p.m_dr = in.readInt();
+        p.m_dg = in.readInt();
+        p.m_db = in.readInt();
+        break;
+      case WalkEngine.WalkerPool.NOISY:
+        WalkEngine.NoisyPen n = (WalkEngine.NoisyPen)d;
+        n.m_color = in.readInt();
+        n.m_r = in.readInt();
+        break;
+      default:
+        break;
+    }
+  }
+
+  static void writePool( DataOutput out, WalkEngine.WalkerPool pool ) throws IOException {
+    int n = pool.m_size;
+    ByteBuffer buf = ByteBuffer.allocate( 1 << 16 );
+
+    out.writeByte( pool.m_type );
+    out.writeByte( pool.m_cspace );
+    out.writeInt( pool.m_pr );
+    out.writeInt( pool.m_pg );
+    out.writeInt( pool.m_pb );
+    out.writeInt( n );
+
+    writeInts( out, pool.m_x, 0, n, buf );
+    writeInts( out, pool.m_y, 0, n, buf );
+    writeInts( out, pool.m_xwalk, 0, n, buf );
+    writeInts( out, pool.m_ywalk, 0, n, buf );
+    writeInts( out, pool.m_color, 0, n, buf );
+    for ( int i = 0; i < n; ++i )
+      out.writeFloat( pool.m_alpha[i] );
+    if ( pool.m_offset != null )
+      writeInts( out, pool.m_offset, 0, n, buf );
+
+    for ( RandomSource rand : pool.m_rands )
+      rand.save( out );
+  }
+
+  static void readPool( DataInput in, WalkEngine.WalkerPool pool ) throws IOException {
+    int n = pool.m_size;
+    ByteBuffer buf = ByteBuffer.allocate( 1 << 16 );
+
+    expect( "pool walker type", in.readByte(), pool.m_type );
+    expect( "pool color space", in.readByte(), pool.m_cspace );
+    pool.m_pr = in.readInt();
+    pool.m_pg = in.readInt();
+    pool.m_pb = in.readInt();
+    expect( "pool size", in.readInt(), n );
+
+    readInts( in, pool.m_x, 0, n, buf );
+    readInts( in, pool.m_y, 0, n, buf );
+    readInts( in, pool.m_xwalk, 0, n, buf );
+    readInts( in, pool.m_ywalk, 0, n, buf );
+    readInts( in, pool.m_color, 0, n, buf );
+    for ( int i = 0; i < n; ++i )
+      pool.m_alpha[i] = in.readFloat();
+    if ( pool.m_offset != null )
+      readInts( in, pool.m_offset, 0, n, buf );
+
+    for ( RandomSource rand : pool.m_rands )
+      rand.restore( in );
+  }
+
+  // color spaces are tagged with the WalkerPool color spaces
+  static int spaceTag( WalkEngine.ColorSpace space ) {
+    if ( space instanceof WalkEngine.RWalk )
+      return WalkEngine.WalkerPool.R_SPACE;
+    else if ( space instanceof WalkEngine.GWalk )
+      return WalkEngine.WalkerPool.G_SPACE;
+    else if ( space instanceof WalkEngine.BWalk )
+      return WalkEngine.WalkerPool.B_SPACE;
+    else if ( space instanceof WalkEngine.YWalk )
+      return WalkEngine.WalkerPool.Y_SPACE;
+    else if ( space instanceof WalkEngine.RGBWalk )
+      return WalkEngine.WalkerPool.RGB_SPACE;
+    else
+      throw new IllegalArgumentException( "cannot checkpoint a " + space.getClass().getName() );
+  }
+
+  static void writeSpace( DataOutput out, WalkEngine.ColorSpace space ) throws IOException {
+    out.writeByte( spaceTag( space ) );
+
+    switch ( spaceTag( space ) ) {
+      case WalkEngine.WalkerPool.R_SPACE:
+        WalkEngine.RWalk r = (WalkEngine.RWalk)space;
+        out.writeInt( r.m_color );
+        r.m_rand.save( out );
+        break;
+      case WalkEngine.WalkerPool.G_SPACE:
+        WalkEngine.GWalk g = (WalkEngine.GWalk)space;
+        out.writeInt( g.m_color );
+        g.m_rand.save( out );
+        break;
+      case WalkEngine.WalkerPool.B_SPACE:
+        WalkEngine.BWalk b = (WalkEngine.BWalk)space;
+        out.writeInt( b.m_color );
+        b.m_rand.save( out );
+        break;
+      case WalkEngine.WalkerPool.Y_SPACE:
+        WalkEngine.YWalk y = (WalkEngine.YWalk)space;
+        out.writeInt( y.m_color );
+        y.m_rand.save( out );
+        break;
+      default:
+        WalkEngine.RGBWalk rgb = (WalkEngine.RGBWalk)space;
+        out.writeInt( rgb.m_color );
+        rgb.m_rand.save( out );
+        break;
+    }
+  }
+
+  static void readSpace( DataInput in, WalkEngine.ColorSpace space ) throws IOException {
+    expect( "color space", in.readByte(), spaceTag( space ) );
+
+    switch ( spaceTag( space ) ) {
+      case WalkEngine.WalkerPool.R_SPACE:
+        WalkEngine.RWalk r = (WalkEngine.RWalk)space;
+        r.m_color = in.readInt();
+        r.m_rand.restore( in );
+        break;
+      case WalkEngine.WalkerPool.G_SPACE:
+        WalkEngine.GWalk g = (WalkEngine.GWalk)space;
+        g.m_color = in.readInt();
+        g.m_rand.restore( in );
+        break;
+      case WalkEngine.WalkerPool.B_SPACE:
+        WalkEngine.BWalk b = (WalkEngine.BWalk)space;
+        b.m_color = in.readInt();
+        b.m_rand.restore( in );
+        break;
+      case WalkEngine.WalkerPool.Y_SPACE:
+        WalkEngine.YWalk y = (WalkEngine.YWalk)space;
+        y.m_color = in.readInt();
+        y.m_rand.restore( in );
+        break;
+      default:
+        WalkEngine.RGBWalk rgb = (WalkEngine.RGBWalk)space;
+        rgb.m_color = in.readInt();
+        rgb.m_rand.restore( in );
+        break;
+    }
+  }
+
+  static void expect( String what, int found, int expected ) throws IOException {
+    if ( found != expected )
+      throw new IOException( "checkpoint does not match the walkers: " + what + " is " + found + ", expected "
+          + expected );
+  }
+
+  //===========================================================
+  //========================= CANVAS ==========================
+  //===========================================================
+
+  /** Writes every tile of the canvas, in rows, see writeTile().
+   */
+  static void writeCanvas( DataOutput out, Canvas canvas ) throws IOException {
+    int[] tile = new int[ TILE * TILE ];
+    ByteBuffer buf = ByteBuffer.allocate( TILE * TILE * 4 );
+
+    for ( int y = 0; y < canvas.height(); y += TILE )
+      for ( int x = 0; x < canvas.width(); x += TILE )
+        writeTile( out, canvas, x, y, tile, buf );
+  }
+
+  static void readCanvas( DataInput in, Canvas canvas ) throws IOException {
+    int[] tile = new int[ TILE * TILE ];
+    ByteBuffer buf = ByteBuffer.allocate( TILE * TILE * 4 );
+
+    for ( int y = 0; y < canvas.height(); y += TILE )
+      for ( int x = 0; x < canvas.width(); x += TILE )
+        readTile( in, canvas, x, y, tile, buf );
+  }
+
+  /** Writes the tile at x, y, clipped to the canvas: BLACK_TILE if it is all opaque black, otherwise COLOR_TILE
+   * and its colors in rows, or for a Canvas.Hdr HDR_TILE and its red, green and blue floats, each in rows.
+   * @param tile and buf are scratch space for TILE * TILE colors.
+   */
+  static void writeTile( DataOutput out, Canvas canvas, int x, int y, int[] tile, ByteBuffer buf )
+      throws IOException {
+    if ( canvas instanceof Canvas.Tiled && !( (Canvas.Tiled)canvas ).written( x, y ) ) {
+      out.writeByte( BLACK_TILE );
+      return;
+    }
+
+    int w = Math.min( TILE, canvas.width() - x );
+    int h = Math.min( TILE, canvas.height() - y );
+    long width = canvas.width();
+
+    if ( canvas instanceof Canvas.Hdr ) {
+      Canvas.Hdr hdr = (Canvas.Hdr)canvas;
+
+      // only exact zeros are black, channels that round to 0 are not
+      boolean black = true;
+      for ( int row = 0; row < h && black; ++row )
+        for ( int j = ( y + row ) * (int)width + x, end = j + w; j < end; ++j )
+          black &= hdr.m_r[j] == 0 && hdr.m_g[j] == 0 && hdr.m_b[j] == 0;
+
+      out.writeByte( black ? BLACK_TILE : HDR_TILE );
+      if ( !black )
+        for ( float[] channel : new float[][] { hdr.m_r, hdr.m_g, hdr.m_b } )
+          writeFloats( out, channel, x, y, w, h, (int)width, buf );
+      return;
+    }
+
+    boolean black = true;
+    for ( int row = 0, k = 0; row < h; ++row )
+      for ( int col = 0; col < w; ++col, ++k ) {
+        tile[k] = canvas.get( ( y + row ) * width + x + col );
+        black &= tile[k] == BLACK;
+      }
+
+    out.writeByte( black ? BLACK_TILE : COLOR_TILE );
+    if ( !black )
+      writeInts( out, tile, 0, w * h, buf );
+  }
+
+  /** Reads a tile written by writeTile() into the canvas at x, y. Color tiles can be read into any canvas, HDR
+   * tiles only into a Canvas.Hdr.
+   */
+  static void readTile( DataInput in, Canvas canvas, int x, int y, int[] tile, ByteBuffer buf ) throws IOException {
+    int w = Math.min( TILE, canvas.width() - x );
+    int h = Math.min( TILE, canvas.height() - y );
+    long width = canvas.width();
+
+    int tag = in.readByte();
+    if ( tag != BLACK_TILE && tag != COLOR_TILE && tag != HDR_TILE )
+      throw new IOException( "bad tile tag " + tag );
+
+    if ( canvas instanceof Canvas.Hdr && tag != COLOR_TILE ) {
+      // black is cleared here too, since channels that round to black need not be 0
+      Canvas.Hdr hdr = (Canvas.Hdr)canvas;
+      for ( float[] channel : new float[][] { hdr.m_r, hdr.m_g, hdr.m_b } ) {
+        if ( tag == HDR_TILE )
+          readFloats( in, channel, x, y, w, h, (int)width, buf );
+        else
+          for ( int row = 0; row < h; ++row )
+            Arrays.fill( channel, ( y + row ) * (int)width + x, ( y + row ) * (int)width + x + w, 0 );
+      }
+      return;
+    }
+
+    if ( tag == HDR_TILE )
+      throw new IOException( "the checkpoint holds an HDR canvas, which can only be restored into a Canvas.Hdr" );
+
+    boolean black = tag == BLACK_TILE;
+    if ( !black )
+      readInts( in, tile, 0, w * h, buf );
+
+    for ( int row = 0, k = 0; row < h; ++row )
+      for ( int col = 0; col < w; ++col, ++k ) {
+        long i = ( y + row ) * width + x + col;
+
+        // black tiles leave black pixels alone, so unwritten tiles of a sparse canvas stay unallocated
+        if ( !black )
+          canvas.set( i, tile[k] );
+        else if ( canvas.get( i ) != BLACK )
+          canvas.set( i, BLACK );
+      }
+  }
+
+  // ints go through a byte buffer, writeInt() per int is several times slower
+  static void writeInts( DataOutput out, int[] a, int from, int n, ByteBuffer buf ) throws IOException {
+    int chunk = buf.capacity() / 4;
+
+    for ( int i = from; i < from + n; i += chunk ) {
+      int m = Math.min( chunk, from + n - i );
+      buf.clear();
+      buf.asIntBuffer().put( a, i, m );
+      out.write( buf.array(), 0, m * 4 );
+    }
+  }
+
+  static void readInts( DataInput in, int[] a, int from, int n, ByteBuffer buf ) throws IOException {
+    int chunk = buf.capacity() / 4;
+
+    for ( int i = from; i < from + n; i += chunk ) {
+      int m = Math.min( chunk, from + n - i );
+      in.readFully( buf.array(), 0, m * 4 );
+      buf.clear();
+      buf.asIntBuffer().get( a, i, m );
+    }
+  }
+
+  // writes the w * h region at x, y of a channel in rows, through a buffer of at least w * h floats
+  static void writeFloats( DataOutput out, float[] a, int x, int y, int w, int h, int width, ByteBuffer buf )
+      throws IOException {
+    buf.clear();
+    FloatBuffer floats = buf.asFloatBuffer();
+    for ( int row = 0; row < h; ++row )
+      floats.put( a, ( y + row ) * width + x, w );
+
+    out.write( buf.array(), 0, w * h * 4 );
+  }
+
+  static void readFloats( DataInput in, float[] a, int x, int y, int w, int h, int width, ByteBuffer buf )
+      throws IOException {
+    in.readFully( buf.array(), 0, w * h * 4 );
+    buf.clear();
+    FloatBuffer floats = buf.asFloatBuffer();
+    for ( int row = 0; row < h; ++row )
+      floats.get( a, ( y + row ) * width + x, w );
+  }
+}
@@ -0,0 +1,332 @@
+package randomwalk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Incremental checkpoints: an append-only log of checkpoints that each hold only the canvas tiles drawn into
+ * since the one before, so a walk can be checkpointed every few seconds with I/O proportional to what the walkers
+ * drew rather than to the size of the canvas. The tiles are the engine's dirty tiles, flagged by every plot.
+ *
+ * The log starts with a base record of the whole canvas. Every append() adds a record of the walkers, written
+ * whole since all of them move every tick, and the tiles drawn since the last record. Once the records appended
+ * since the base are COMPACT_RATIO times its size, the log is compacted: rewritten as a new base of the current
+ * state beside the old log, and renamed over it.
+ *
+ * Records are framed by their length and a CRC32 and synced as they are appended, so a crash while appending
+ * loses only that record: read() replays the records that are complete and stops at the first that is not.
+ *
+ * The file holds the magic number, the version, the canvas size and the random source, see
+ * Checkpoint.sourceTag(), then records of a length, that many bytes of deflated data and their CRC32. The data is
+ * the walkers as in a Checkpoint, then a tile count and as many tile indices, each followed by its tile, see
+ * Checkpoint.writeTile().
+ */
+public class CheckpointLog implements Closeable {
+  // "RWCL", and the version of the format
+  final static int MAGIC = 0x5257434c;
+  final static int VERSION = 3;
+
+  // the magic number, version, width, height and random source
+  final static int HEADER = 20;
+
+  // how many times the size of the base the appended records grow to before the log is compacted
+  final static int COMPACT_RATIO = 2;
+
+  WalkEngine m_engine;
+  File m_file;
+  FileChannel m_channel;
+
+  // the size of the base record, and of the records appended since
+  long m_base;
+  long m_appended;
+
+  // the dirty tiles, and scratch space to write one
+  int[] m_tiles;
+  int[] m_tile;
+  ByteBuffer m_buf;
+
+  /** Starts a log with a base record of the engine's state, replacing the file. Turns on dirty tracking in the
+   * engine, see WalkEngine.setTrackDirty(). Must not be called during a tick.
+   * @param engine the engine.
+   * @param file the log.
+   * @throws IllegalArgumentException if the draw list holds drawables other than the engine's walkers and pools.
+   * @throws UnsupportedOperationException if a random source cannot be checkpointed.
+   */
+  public CheckpointLog( WalkEngine engine, File file ) throws IOException {
+    m_engine = engine;
+    m_file = file;
+
+    engine.setTrackDirty( true );
+    m_tiles = new int[ engine.m_dirty.length ];
+    m_tile = new int[ Checkpoint.TILE * Checkpoint.TILE ];
+    m_buf = ByteBuffer.allocate( Checkpoint.TILE * Checkpoint.TILE * 4 );
+
+    compact();
+  }
+
+  /** Appends a record of the walkers and the tiles drawn since the last record, and compacts the log if the
+   * appended records have grown large. Must not be called during a tick.
+   */
+  public void append() throws IOException {
+    int n = m_engine.takeDirtyTiles( m_tiles );
+
+    try {
+      m_appended += writeRecord( m_channel, n );
+      m_channel.force( false );
+    } catch ( IOException | RuntimeException e ) {
+      // the next record has to cover the tiles this one took
+      m_engine.touchAll();
+      throw e;
+    }
+
+    if ( m_appended > COMPACT_RATIO * m_base )
+      compact();
+  }
+
+  /** Rewrites the log as a single base record of the current state. Must not be called during a tick.
+   */
+  public void compact() throws IOException {
+    // the base covers every tile, including the dirty ones
+    m_engine.takeDirtyTiles( m_tiles );
+    for ( int t = 0; t < m_tiles.length; ++t )
+      m_tiles[t] = t;
+
+    File tmp = new File( m_file.getPath() + ".tmp" );
+    try ( FileChannel channel = FileChannel.open( tmp.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE ) ) {
+      ByteBuffer header = ByteBuffer.allocate( HEADER );
+      header.putInt( MAGIC ).putInt( VERSION ).putInt( m_engine.width() ).putInt( m_engine.height() )
+          .putInt( Checkpoint.sourceTag( m_engine.m_rand ) ).flip();
+      channel.write( header );
+
+      m_base = writeRecord( channel, m_tiles.length );
+
+      // on disk before it replaces the previous log
+      channel.force( true );
+    } catch ( IOException | RuntimeException e ) {
+      m_engine.touchAll();
+      throw e;
+    }
+
+    close();
+    try {
+      Files.move( tmp.toPath(), m_file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE );
+      m_appended = 0;
+    } finally {
+      // the new log, or the old one if it could not be replaced
+      m_channel = FileChannel.open( m_file.toPath(), StandardOpenOption.WRITE );
+    }
+  }
+
+  /** Appends a record of the walkers and the first n tiles of m_tiles at the end of a channel.
+   * @return the size of the record.
+   */
+  long writeRecord( FileChannel channel, int n ) throws IOException {
+    long start = channel.size();
+    channel.position( start + 8 );
+
+    Canvas canvas = m_engine.canvas();
+    int cols = m_engine.m_dirtyCols;
+
+    CRC32 crc = new CRC32();
+    BufferedOutputStream raw = new BufferedOutputStream(
+        new CheckedOutputStream( Channels.newOutputStream( channel ), crc ), 1 << 16 );
+    Deflater deflater = new Deflater();
+
+    try {
+      DeflaterOutputStream zip = new DeflaterOutputStream( raw, deflater );
+      DataOutputStream out = new DataOutputStream( new BufferedOutputStream( zip, 1 << 16 ) );
+
+      Checkpoint.writeWalkers( out, m_engine );
+
+      out.writeInt( n );
+      for ( int i = 0; i < n; ++i ) {
+        int t = m_tiles[i];
+        out.writeInt( t );
+        Checkpoint.writeTile( out, canvas, ( t % cols ) * Checkpoint.TILE, ( t / cols ) * Checkpoint.TILE, m_tile,
+            m_buf );
+      }
+
+      // closing the streams would close the channel
+      out.flush();
+      zip.finish();
+      raw.flush();
+    } catch ( IOException | RuntimeException e ) {
+      // drop the partial record, so the records appended after it can be read
+      channel.truncate( start );
+      throw e;
+    } finally {
+      deflater.end();
+    }
+
+    long length = channel.position() - start - 8;
+    ByteBuffer frame = ByteBuffer.allocate( 8 );
+    frame.putLong( length ).flip();
+    channel.write( frame, start );
+
+    frame.clear();
+    frame.putInt( (int)crc.getValue() ).flip();
+    channel.write( frame, start + 8 + length );
+
+    return length + 12;
+  }
+
+  /** Stops appending. The log stays readable.
+   */
+  public void close() throws IOException {
+    if ( m_channel != null )
+      m_channel.close();
+
+    m_channel = null;
+  }
+
+  //===========================================================
+  //========================= READING =========================
+  //===========================================================
+
+  /** Returns whether a file is a checkpoint log rather than a single Checkpoint.
+   */
+  public static boolean isLog( File file ) throws IOException {
+    if ( file.length() < 4 )
+      return false;
+
+    try ( DataInputStream in = new DataInputStream( new FileInputStream( file ) ) ) {
+      return in.readInt() == MAGIC;
+    }
+  }
+
+  /** Replays the complete records of a log into an engine set up like the one it was written from, see
+   * Checkpoint.read(), restoring the state of the last of them.
+   * @throws IOException if the file is not a log, holds no complete record or does not match the engine.
+   */
+  public static void read( WalkEngine engine, File file ) throws IOException {
+    try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+      ByteBuffer header = ByteBuffer.allocate( HEADER );
+      while ( header.hasRemaining() && channel.read( header ) >= 0 );
+      header.flip();
+
+      if ( header.remaining() < HEADER || header.getInt() != MAGIC )
+        throw new IOException( file + " is not a checkpoint log" );
+
+      int version = header.getInt();
+      if ( version != VERSION )
+        throw new IOException( file + " is a version " + version + " checkpoint log, expected " + VERSION );
+
+      Checkpoint.checkSize( header.getInt(), header.getInt(), engine );
+      Checkpoint.checkSource( header.getInt(), engine );
+
+      int cols = ( engine.width() + Checkpoint.TILE - 1 ) / Checkpoint.TILE;
+      int tiles = cols * ( ( engine.height() + Checkpoint.TILE - 1 ) / Checkpoint.TILE );
+      int[] tile = new int[ Checkpoint.TILE * Checkpoint.TILE ];
+      ByteBuffer buf = ByteBuffer.allocate( Checkpoint.TILE * Checkpoint.TILE * 4 );
+
+      long size = channel.size();
+      int records = 0;
+      for ( long pos = HEADER; pos + 8 <= size; ) {
+        long length = readLong( channel, pos );
+        if ( length < 0 || pos + 12 + length > size || !check( channel, pos + 8, length ) )
+          break;
+
+        try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new InflaterInputStream(
+            new Region( channel, pos + 8, length ) ), 1 << 16 ) ) ) {
+          Checkpoint.readWalkers( in, engine );
+
+          int n = in.readInt();
+          for ( int i = 0; i < n; ++i ) {
+            int t = in.readInt();
+            if ( t < 0 || t >= tiles )
+              throw new IOException( "bad tile " + t + " in " + file );
+
+            Checkpoint.readTile( in, engine.canvas(), ( t % cols ) * Checkpoint.TILE, ( t / cols ) * Checkpoint.TILE,
+                tile, buf );
+          }
+        }
+
+        pos += 12 + length;
+        ++records;
+      }
+
+      if ( records == 0 )
+        throw new IOException( file + " holds no complete checkpoint" );
+    }
+  }
+
+  static long readLong( FileChannel channel, long pos ) throws IOException {
+    ByteBuffer b = ByteBuffer.allocate( 8 );
+    while ( b.hasRemaining() && channel.read( b, pos + b.position() ) >= 0 );
+
+    return b.getLong( 0 );
+  }
+
+  /** Returns whether the length bytes at pos match the CRC32 that follows them.
+   */
+  static boolean check( FileChannel channel, long pos, long length ) throws IOException {
+    CRC32 crc = new CRC32();
+    byte[] chunk = new byte[ 1 << 16 ];
+
+    try ( InputStream in = new Region( channel, pos, length + 4 ) ) {
+      for ( long left = length; left > 0; ) {
+        int n = in.read( chunk, 0, (int)Math.min( chunk.length, left ) );
+        if ( n < 0 )
+          return false;
+
+        crc.update( chunk, 0, n );
+        left -= n;
+      }
+
+      DataInputStream tail = new DataInputStream( in );
+      return tail.readInt() == (int)crc.getValue();
+    }
+  }
+
+  // a stream over length bytes of a channel from pos, read with positional reads. Closing it leaves the channel
+  // open.
+  static class Region extends InputStream {
+    FileChannel m_channel;
+    long m_pos;
+    long m_left;
+
+    Region( FileChannel channel, long pos, long length ) {
+      m_channel = channel;
+      m_pos = pos;
+      m_left = length;
+    }
+
+    public int read() throws IOException {
+      byte[] b = new byte[ 1 ];
+      return read( b, 0, 1 ) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    public int read( byte[] b, int off, int len ) throws IOException {
+      if ( m_left <= 0 )
+        return -1;
+
+      int n = m_channel.read( ByteBuffer.wrap( b, off, (int)Math.min( len, m_left ) ), m_pos );
+      if ( n > 0 ) {
+        m_pos += n;
+        m_left -= n;
+      }
+
+      return n;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package randomwalk;
+
+/**
+ * Integer color math on packed ARGB colors. Channels are extracted and packed with shifts and masks, offsets
+ * saturate, and blending is 8-bit fixed point, with red and blue blended together in one multiply. Results
+ * match the float functions in WalkEngine to within one step of rounding per channel.
+ */
+public class ColorKernel {
+  // the red and blue channels, and the green channel
+  final static int RB = 0x00ff00ff;
+  final static int G = 0x0000ff00;
+  final static int OPAQUE = 0xff000000;
+
+  /** Returns the red component of c on [0, 255]. */
+  public static int red( int c ) { return ( c >> 16 ) & 0xff; }
+
+  /** Returns the green component of c on [0, 255]. */
+  public static int green( int c ) { return ( c >> 8 ) & 0xff; }
+
+  /** Returns the blue component of c on [0, 255]. */
+  public static int blue( int c ) { return c & 0xff; }
+
+  /** Packs components already on [0, 255] into an opaque color. */
+  public static int pack( int r, int g, int b ) { return OPAQUE | ( r << 16 ) | ( g << 8 ) | b; }
+
+  /** Clamps n to [0, 255]. */
+  public static int clamp( int n ) { return Math.max( 0, Math.min( 255, n ) ); }
+
+  /** Offsets the components of c, saturating at 0 and 255.
+   * @param c the input color.
+   * @param dr the red component offset.
+   * @param dg the green component offset.
+   * @param db the blue component offset.
+   */
+  public static int offset( int c, int dr, int dg, int db ) {
+    return pack( clamp( red( c ) + dr ), clamp( green( c ) + dg ), clamp( blue( c ) + db ) );
+  }
+
+  /** Returns the 8-bit fixed-point weight of a blending factor on [0, 1], on [0, 256].
+   */
+  public static int weight( float blend ) { return (int)( blend * 256 + 0.5f ); }
+
+  /** Does a weighted average of c1 and c2.
+   * @param c1 The first color.
+   * @param c2 The second color.
+   * @param w the weight of c1 on [0, 256], see weight().
+   */
+  public static int blend( int c1, int c2, int w ) {
+    int v = 256 - w;
+
+    // each channel product is at most 255 * 256, so red and blue don't spill into each other
+    int rb = ( ( ( c1 & RB ) * w + ( c2 & RB ) * v + 0x00800080 ) >>> 8 ) & RB;
+    int g = ( ( ( c1 & G ) * w + ( c2 & G ) * v + 0x00008000 ) >>> 8 ) & G;
+
+    return OPAQUE | rb | g;
+  }
+
+  /** Does a weighted average of draw_color and current_pixel, but ignores components of draw_color that are black.
+   * @param draw_color the color to draw.
+   * @param current_pixel the color to draw onto.
+   * @param w the weight of draw_color on [0, 256], see weight().
+   */
+  public static int blendKnockout( int draw_color, int current_pixel, int w ) {
+    // 0xff in every channel where draw_color is not black, without branches
+    int mask = ( ( ( -red( draw_color ) ) >> 31 ) & 0x00ff0000 )
+             | ( ( ( -green( draw_color ) ) >> 31 ) & 0x0000ff00 )
+             | ( ( ( -blue( draw_color ) ) >> 31 ) & 0x000000ff );
+
+    return ( blend( draw_color, current_pixel, w ) & mask ) | ( current_pixel & ~mask ) | OPAQUE;
+  }
+}
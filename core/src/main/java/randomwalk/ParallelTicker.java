@@ -0,0 +1,250 @@
+package randomwalk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Advances the draw list of a WalkEngine on a ForkJoinPool. Each tick runs in two phases:
+ *
+ * 1. the blocks of every ParallelDrawable move concurrently, each drawing from its own stream, and sort their
+ *    walkers into horizontal bands of the canvas by their new position;
+ * 2. the bands plot concurrently, each plotting its walkers in draw list order.
+ *
+ * Conflicts are resolved by ownership: a pixel is only ever written by the thread that owns its band, and
+ * walkers that land on the same pixel plot in draw list order, exactly as in a sequential tick. Drawables that
+ * are not ParallelDrawables are drawn on the calling thread in their place in the draw list, between the runs of
+ * ParallelDrawables around them, so with per-walker streams the canvas is the same for any number of threads.
+ */
+public class ParallelTicker {
+  // the number of walkers a move task gathers before a new task is started
+  final static int TASK_WALKERS = 4096;
+
+  // bands per thread, more bands balance walkers that cluster on a few rows
+  final static int BANDS_PER_THREAD = 4;
+
+  WalkEngine m_engine;
+  ForkJoinPool m_pool;
+
+  // the draw list the tasks were built for, and the number of blocks each drawable had
+  ArrayList<WalkEngine.Drawable> m_drawables;
+  int[] m_blocks;
+
+  // the draw list split into runs of parallel drawables and the serial drawables between them
+  ArrayList<Stage> m_stages;
+
+  // the plot tasks, and the move tasks of the stage they are plotting
+  ArrayList<PlotTask> m_plots;
+  ArrayList<MoveTask> m_moves;
+
+  // the number of pixels in a band
+  long m_bandPixels;
+
+  /**
+   * @param engine the engine to tick.
+   * @param threads the number of worker threads.
+   */
+  public ParallelTicker( WalkEngine engine, int threads ) {
+    m_engine = engine;
+    m_pool = new ForkJoinPool( threads );
+
+    int rows = ( engine.height() + threads * BANDS_PER_THREAD - 1 ) / ( threads * BANDS_PER_THREAD );
+    int bands = ( engine.height() + rows - 1 ) / rows;
+    m_bandPixels = (long)rows * engine.width();
+
+    m_plots = new ArrayList<PlotTask>();
+    for ( int b = 0; b < bands; ++b )
+      m_plots.add( new PlotTask( b ) );
+
+    m_drawables = new ArrayList<WalkEngine.Drawable>();
+    m_blocks = new int[ 0 ];
+  }
+
+  /** Runs one tick of the engine's draw list.
+   */
+  public void tick() {
+    if ( layoutChanged() )
+      layout();
+
+    for ( Stage stage : m_stages ) {
+      if ( stage.m_serial != null ) {
+        stage.m_serial.draw();
+        continue;
+      }
+
+      m_moves = stage.m_moves;
+      run( m_moves );
+      run( m_plots );
+    }
+  }
+
+  /** Stops the worker threads.
+   */
+  public void shutdown() { m_pool.shutdown(); }
+
+  private void run( final ArrayList<? extends RecursiveAction> tasks ) {
+    for ( RecursiveAction t : tasks )
+      t.reinitialize();
+
+    m_pool.invoke( new RecursiveAction() {
+      protected void compute() { invokeAll( tasks ); }
+    } );
+  }
+
+  private boolean layoutChanged() {
+    ArrayList<WalkEngine.Drawable> draw = m_engine.m_draw;
+
+    if ( draw.size() != m_drawables.size() )
+      return true;
+
+    for ( int i = 0; i < draw.size(); ++i ) {
+      WalkEngine.Drawable d = draw.get( i );
+
+      if ( d != m_drawables.get( i ) )
+        return true;
+      if ( d instanceof WalkEngine.ParallelDrawable && ( (WalkEngine.ParallelDrawable)d ).blocks() != m_blocks[i] )
+        return true;
+    }
+
+    return false;
+  }
+
+  /** Splits the draw list into stages, and the runs of parallel drawables into move tasks of about TASK_WALKERS
+   * walkers each, keeping draw list order.
+   */
+  private void layout() {
+    ArrayList<WalkEngine.Drawable> draw = m_engine.m_draw;
+
+    m_drawables = new ArrayList<WalkEngine.Drawable>( draw );
+    m_blocks = new int[ draw.size() ];
+    m_stages = new ArrayList<Stage>();
+
+    Stage stage = null;
+    MoveTask task = null;
+
+    for ( int i = 0; i < draw.size(); ++i ) {
+      if ( !( draw.get( i ) instanceof WalkEngine.ParallelDrawable ) ) {
+        m_stages.add( new Stage( draw.get( i ) ) );
+        stage = null;
+        continue;
+      }
+
+      if ( stage == null ) {
+        stage = new Stage( null );
+        m_stages.add( stage );
+        task = new MoveTask();
+        stage.m_moves.add( task );
+      }
+
+      WalkEngine.ParallelDrawable d = (WalkEngine.ParallelDrawable)draw.get( i );
+      m_blocks[i] = d.blocks();
+
+      for ( int b = 0; b < m_blocks[i]; ++b ) {
+        if ( task.m_walkers >= TASK_WALKERS ) {
+          task = new MoveTask();
+          stage.m_moves.add( task );
+        }
+
+        task.add( d, b );
+      }
+    }
+  }
+
+  //===========================================================
+  //========================= TASKS ===========================
+  //===========================================================
+
+  /** A serial drawable, or a run of parallel drawables split into move tasks.
+   */
+  class Stage {
+    WalkEngine.Drawable m_serial;
+    ArrayList<MoveTask> m_moves;
+
+    Stage( WalkEngine.Drawable serial ) {
+      m_serial = serial;
+      m_moves = new ArrayList<MoveTask>();
+    }
+  }
+
+  /** Moves a run of consecutive blocks, then sorts their walkers into bands.
+   */
+  class MoveTask extends RecursiveAction {
+    // the blocks to move
+    WalkEngine.ParallelDrawable[] m_drawables = new WalkEngine.ParallelDrawable[ 4 ];
+    int[] m_blockIds = new int[ 4 ];
+    int m_units;
+    int m_walkers;
+
+    // for each band, the walkers that landed in it as ( unit, walker ) pairs
+    int[][] m_bandWalkers;
+    int[] m_bandCounts;
+
+    MoveTask() {
+      m_bandWalkers = new int[ m_plots.size() ][];
+      m_bandCounts = new int[ m_plots.size() ];
+
+      for ( int b = 0; b < m_bandWalkers.length; ++b )
+        m_bandWalkers[b] = new int[ 16 ];
+    }
+
+    void add( WalkEngine.ParallelDrawable d, int block ) {
+      if ( m_units == m_drawables.length ) {
+        m_drawables = Arrays.copyOf( m_drawables, m_units * 2 );
+        m_blockIds = Arrays.copyOf( m_blockIds, m_units * 2 );
+      }
+
+      m_drawables[ m_units ] = d;
+      m_blockIds[ m_units ] = block;
+      ++m_units;
+
+      m_walkers += d.blockStart( block + 1 ) - d.blockStart( block );
+    }
+
+    protected void compute() {
+      Arrays.fill( m_bandCounts, 0 );
+
+      for ( int u = 0; u < m_units; ++u ) {
+        WalkEngine.ParallelDrawable d = m_drawables[u];
+        int block = m_blockIds[u];
+
+        d.move( block );
+
+        int end = d.blockStart( block + 1 );
+        for ( int i = d.blockStart( block ); i < end; ++i )
+          append( (int)( d.index( i ) / m_bandPixels ), u, i );
+      }
+    }
+
+    private void append( int band, int unit, int walker ) {
+      int[] walkers = m_bandWalkers[ band ];
+      int count = m_bandCounts[ band ];
+
+      if ( count + 2 > walkers.length )
+        walkers = m_bandWalkers[ band ] = Arrays.copyOf( walkers, walkers.length * 2 );
+
+      walkers[ count ] = unit;
+      walkers[ count + 1 ] = walker;
+      m_bandCounts[ band ] = count + 2;
+    }
+  }
+
+  /** Plots the walkers that landed in one band, in draw list order.
+   */
+  class PlotTask extends RecursiveAction {
+    int m_band;
+
+    PlotTask( int band ) { m_band = band; }
+
+    protected void compute() {
+      // the move tasks are in draw list order, and so are the walkers within each
+      for ( MoveTask t : m_moves ) {
+        int[] walkers = t.m_bandWalkers[ m_band ];
+        int count = t.m_bandCounts[ m_band ];
+
+        for ( int k = 0; k < count; k += 2 )
+          t.m_drawables[ walkers[k] ].plot( walkers[ k + 1 ] );
+      }
+    }
+  }
+}
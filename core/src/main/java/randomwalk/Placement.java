@@ -0,0 +1,222 @@
+package randomwalk;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+/**
+ * Places walkers spawned in bulk into a WalkerPool, see WalkerPool.spawn(). Positions may fall off the canvas,
+ * the pool wraps them.
+ */
+public interface Placement {
+  /** Writes the starting positions of n walkers into x[ from .. from + n ) and y[ from .. from + n ).
+   * @param width the width of the canvas.
+   * @param height the height of the canvas.
+   * @param rand a stream for random placements.
+   */
+  public void place( int[] x, int[] y, int from, int n, int width, int height, RandomSource rand );
+
+  //===========================================================
+  //===================== IMPLEMENTATIONS =====================
+  //===========================================================
+
+  /** Every walker in the center of the canvas, like the walkers of the default scene.
+   */
+  public static class Center implements Placement {
+    public void place( int[] x, int[] y, int from, int n, int width, int height, RandomSource rand ) {
+      for ( int i = from; i < from + n; ++i ) {
+        x[i] = width / 2;
+        y[i] = height / 2;
+      }
+    }
+  }
+
+  /** An even grid over the whole canvas, with cells as close to square as the walker count allows.
+   */
+  public static class Grid implements Placement {
+    public void place( int[] x, int[] y, int from, int n, int width, int height, RandomSource rand ) {
+      int cols = Math.max( 1, (int)Math.round( Math.sqrt( (double)n * width / height ) ) );
+      int rows = ( n + cols - 1 ) / cols;
+
+      for ( int k = 0; k < n; ++k ) {
+        x[ from + k ] = (int)( ( k % cols + .5 ) * width / cols );
+        y[ from + k ] = (int)( ( k / cols + .5 ) * height / rows );
+      }
+    }
+  }
+
+  /** Uniformly at random over the canvas.
+   */
+  public static class Uniform implements Placement {
+    public void place( int[] x, int[] y, int from, int n, int width, int height, RandomSource rand ) {
+      for ( int i = from; i < from + n; ++i ) {
+        x[i] = rand.nextInt( width );
+        y[i] = rand.nextInt( height );
+      }
+    }
+  }
+
+  /** A gaussian cluster around the center of the canvas.
+   */
+  public static class Gaussian implements Placement {
+    double m_sigma;
+
+    /**
+     * @param sigma the standard deviation of the cluster in pixels.
+     */
+    public Gaussian( double sigma ) { m_sigma = sigma; }
+
+    public void place( int[] x, int[] y, int from, int n, int width, int height, RandomSource rand ) {
+      for ( int i = from; i < from + n; ++i ) {
+        // Box-Muller, one normal of the pair per axis
+        double r = m_sigma * Math.sqrt( -2 * Math.log( 1 - unit( rand ) ) );
+        double a = 2 * Math.PI * unit( rand );
+
+        x[i] = width / 2 + (int)Math.round( r * Math.cos( a ) );
+        y[i] = height / 2 + (int)Math.round( r * Math.sin( a ) );
+      }
+    }
+  }
+
+  /** Evenly spaced along a line segment.
+   */
+  public static class Line implements Placement {
+    int m_x0;
+    int m_y0;
+    int m_x1;
+    int m_y1;
+
+    public Line( int x0, int y0, int x1, int y1 ) {
+      m_x0 = x0;
+      m_y0 = y0;
+      m_x1 = x1;
+      m_y1 = y1;
+    }
+
+    public void place( int[] x, int[] y, int from, int n, int width, int height, RandomSource rand ) {
+      for ( int k = 0; k < n; ++k ) {
+        double t = n > 1 ? (double)k / ( n - 1 ) : .5;
+
+        x[ from + k ] = (int)Math.round( m_x0 + t * ( m_x1 - m_x0 ) );
+        y[ from + k ] = (int)Math.round( m_y0 + t * ( m_y1 - m_y0 ) );
+      }
+    }
+  }
+
+  /** Evenly spaced around a circle in the center of the canvas.
+   */
+  public static class Circle implements Placement {
+    double m_radius;
+
+    /**
+     * @param radius the radius of the circle in pixels.
+     */
+    public Circle( double radius ) { m_radius = radius; }
+
+    public void place( int[] x, int[] y, int from, int n, int width, int height, RandomSource rand ) {
+      for ( int k = 0; k < n; ++k ) {
+        double a = 2 * Math.PI * k / n;
+
+        x[ from + k ] = width / 2 + (int)Math.round( m_radius * Math.cos( a ) );
+        y[ from + k ] = height / 2 + (int)Math.round( m_radius * Math.sin( a ) );
+      }
+    }
+  }
+
+  /** At random pixels of an image scaled over the canvas, with a probability proportional to their brightness,
+   * so the walkers start out tracing the image.
+   */
+  public static class Image implements Placement {
+    int m_width;
+    int m_height;
+
+    // the running sum of the brightness of the pixels, to sample them by binary search
+    long[] m_cumulative;
+
+    /**
+     * @param pixels the colors of the image in rows, like PApplet.pixels.
+     * @param width the width of the image.
+     * @param height the height of the image.
+     */
+    public Image( int[] pixels, int width, int height ) {
+      m_width = width;
+      m_height = height;
+      m_cumulative = new long[ pixels.length ];
+
+      long sum = 0;
+      for ( int i = 0; i < pixels.length; ++i ) {
+        int c = pixels[i];
+        sum += ( ( c >> 16 ) & 0xff ) + ( ( c >> 8 ) & 0xff ) + ( c & 0xff );
+        m_cumulative[i] = sum;
+      }
+
+      if ( sum == 0 )
+        throw new IllegalArgumentException( "image is black" );
+    }
+
+    public void place( int[] x, int[] y, int from, int n, int width, int height, RandomSource rand ) {
+      long total = m_cumulative[ m_cumulative.length - 1 ];
+
+      for ( int i = from; i < from + n; ++i ) {
+        // the first pixel whose running sum passes a uniform draw on [ 0, total )
+        long r = (long)( unit( rand ) * total );
+        int lo = 0, hi = m_cumulative.length - 1;
+        while ( lo < hi ) {
+          int mid = ( lo + hi ) >>> 1;
+          if ( m_cumulative[ mid ] > r )
+            hi = mid;
+          else
+            lo = mid + 1;
+        }
+
+        x[i] = (int)( ( lo % m_width + unit( rand ) ) * width / m_width );
+        y[i] = (int)( ( lo / m_width + unit( rand ) ) * height / m_height );
+      }
+    }
+  }
+
+  //===========================================================
+  //======================== FACTORY ==========================
+  //===========================================================
+
+  /** Returns a uniformly-distributed double on [ 0, 1 ).
+   */
+  public static double unit( RandomSource rand ) { return ( rand.nextLong() >>> 11 ) * 0x1.0p-53; }
+
+  /** Creates a placement from a description.
+   * @param spec one of center, grid, uniform, gaussian:sigma, line:x0,y0,x1,y1, circle:radius or image:file.
+   */
+  public static Placement create( String spec ) throws IOException {
+    int colon = spec.indexOf( ':' );
+    String name = colon < 0 ? spec : spec.substring( 0, colon );
+    String arg = colon < 0 ? "" : spec.substring( colon + 1 ).trim();
+
+    if ( name.equals( "center" ) )
+      return new Center();
+    else if ( name.equals( "grid" ) )
+      return new Grid();
+    else if ( name.equals( "uniform" ) )
+      return new Uniform();
+    else if ( name.equals( "gaussian" ) )
+      return new Gaussian( Double.parseDouble( arg ) );
+    else if ( name.equals( "circle" ) )
+      return new Circle( Double.parseDouble( arg ) );
+    else if ( name.equals( "line" ) ) {
+      String[] p = arg.split( "," );
+      if ( p.length != 4 )
+        throw new IllegalArgumentException( "line needs x0,y0,x1,y1" );
+
+      return new Line( Integer.parseInt( p[0].trim() ), Integer.parseInt( p[1].trim() ),
+          Integer.parseInt( p[2].trim() ), Integer.parseInt( p[3].trim() ) );
+    } else if ( name.equals( "image" ) ) {
+      BufferedImage img = ImageIO.read( new File( arg ) );
+      if ( img == null )
+        throw new IOException( "not an image: " + arg );
+
+      int[] pixels = img.getRGB( 0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth() );
+      return new Image( pixels, img.getWidth(), img.getHeight() );
+    } else
+      throw new IllegalArgumentException( "unknown placement: " + spec );
+  }
+}
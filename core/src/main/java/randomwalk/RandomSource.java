@@ -0,0 +1,286 @@
+package randomwalk;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * A source of randomness for the walkers. Implementations are not thread safe; give each thread its own
+ * stream with split().
+ */
+public interface RandomSource {
+  /** Returns 32 uniformly-distributed random bits. */
+  public int nextInt();
+
+  /** Returns 64 uniformly-distributed random bits. */
+  public long nextLong();
+
+  /** Returns a new, statistically independent source, advancing this one. */
+  public RandomSource split();
+
+  /** Returns a uniformly-distributed random number on the interval [ 0, bound ).
+   * @param bound the exclusive upper bound, must be positive.
+   */
+  default public int nextInt( int bound ) {
+    // Lemire's multiply-shift, rejecting the few low products that would bias the result
+    long m = ( nextInt() & 0xffffffffL ) * bound;
+    long low = m & 0xffffffffL;
+
+    if ( low < bound ) {
+      long threshold = ( 0x100000000L - bound ) % bound;
+
+      while ( low < threshold ) {
+        m = ( nextInt() & 0xffffffffL ) * bound;
+        low = m & 0xffffffffL;
+      }
+    }
+
+    return (int)( m >>> 32 );
+  }
+
+  /** Returns a uniformly-distributed random number on the interval [ -r, r ].
+   * @param r The radius of the distribution about 0.
+   */
+  default public int zeroMean( int r ) { return nextInt( ( r << 1 ) + 1 ) - r; }
+
+  /** Writes the state of this source, so restore() continues its sequence exactly, see Checkpoint.
+   * @throws UnsupportedOperationException if the state cannot be read out, as for Jdk and Splittable.
+   */
+  default public void save( DataOutput out ) throws IOException {
+    throw new UnsupportedOperationException( getClass().getSimpleName() + " sources cannot be checkpointed" );
+  }
+
+  /** Restores the state written by save() on a source of the same class.
+   * @throws UnsupportedOperationException if the state cannot be set, as for Jdk and Splittable.
+   */
+  default public void restore( DataInput in ) throws IOException {
+    throw new UnsupportedOperationException( getClass().getSimpleName() + " sources cannot be checkpointed" );
+  }
+
+  //===========================================================
+  //===================== IMPLEMENTATIONS =====================
+  //===========================================================
+
+  /** java.util.Random, the original source. Thread safe, but every draw is a CAS on a shared seed. Its seed
+   * cannot be read out, so it cannot be checkpointed.
+   */
+  public static class Jdk implements RandomSource {
+    Random m_rand;
+
+    public Jdk( long seed ) { m_rand = new Random( seed ); }
+
+    public int nextInt() { return m_rand.nextInt(); }
+
+    public long nextLong() { return m_rand.nextLong(); }
+
+    public int nextInt( int bound ) { return m_rand.nextInt( bound ); }
+
+    public RandomSource split() { return new Jdk( m_rand.nextLong() ); }
+  }
+
+  /** java.util.SplittableRandom. Its state cannot be read out, so it cannot be checkpointed.
+   */
+  public static class Splittable implements RandomSource {
+    SplittableRandom m_rand;
+
+    public Splittable( long seed ) { m_rand = new SplittableRandom( seed ); }
+
+    Splittable( SplittableRandom rand ) { m_rand = rand; }
+
+    public int nextInt() { return m_rand.nextInt(); }
+
+    public long nextLong() { return m_rand.nextLong(); }
+
+    public int nextInt( int bound ) { return m_rand.nextInt( bound ); }
+
+    public RandomSource split() { return new Splittable( m_rand.split() ); }
+  }
+
+  /** xoroshiro128++ by Blackman and Vigna, 128 bits of state and a few adds, shifts and rotates per draw.
+   */
+  public static class Xoroshiro implements RandomSource {
+    long m_s0;
+    long m_s1;
+
+    /** @param seed expanded into the full state with splitmix64, so any seed (even 0) is usable. */
+    public Xoroshiro( long seed ) {
+      m_s0 = splitMix( seed + 0x9e3779b97f4a7c15L );
+      m_s1 = splitMix( seed + 0x3c6ef372fe94f82aL );
+    }
+
+    public int nextInt() { return (int)( nextLong() >>> 32 ); }
+
+    public long nextLong() {
+      long s0 = m_s0;
+      long s1 = m_s1;
+      long result = Long.rotateLeft( s0 + s1, 17 ) + s0;
+
+      s1 ^= s0;
+      m_s0 = Long.rotateLeft( s0, 49 ) ^ s1 ^ ( s1 << 21 );
+      m_s1 = Long.rotateLeft( s1, 28 );
+
+      return result;
+    }
+
+    public RandomSource split() { return new Xoroshiro( nextLong() ); }
+
+    public void save( DataOutput out ) throws IOException {
+      out.writeLong( m_s0 );
+      out.writeLong( m_s1 );
+    }
+
+    public void restore( DataInput in ) throws IOException {
+      m_s0 = in.readLong();
+      m_s1 = in.readLong();
+    }
+  }
+
+  /** PCG32 (XSH RR) by O'Neill, a 64-bit LCG with a permuted 32-bit output. Split streams get their own
+   * increment, so they never overlap.
+   */
+  public static class Pcg implements RandomSource {
+    final static long MULTIPLIER = 6364136223846793005L;
+
+    long m_state;
+    long m_inc;
+
+    public Pcg( long seed ) { this( seed, splitMix( seed ) ); }
+
+    /**
+     * @param seed the initial state.
+     * @param stream selects one of 2^63 independent sequences.
+     */
+    public Pcg( long seed, long stream ) {
+      m_inc = ( stream << 1 ) | 1;
+      m_state = 0;
+      nextInt();
+      m_state += seed;
+      nextInt();
+    }
+
+    public int nextInt() {
+      long old = m_state;
+      m_state = old * MULTIPLIER + m_inc;
+
+      int xorshifted = (int)( ( ( old >>> 18 ) ^ old ) >>> 27 );
+      return Integer.rotateRight( xorshifted, (int)( old >>> 59 ) );
+    }
+
+    public long nextLong() { return ( (long)nextInt() << 32 ) | ( nextInt() & 0xffffffffL ); }
+
+    public RandomSource split() { return new Pcg( nextLong(), nextLong() ); }
+
+    public void save( DataOutput out ) throws IOException {
+      out.writeLong( m_state );
+      out.writeLong( m_inc );
+    }
+
+    public void restore( DataInput in ) throws IOException {
+      m_state = in.readLong();
+      m_inc = in.readLong();
+    }
+  }
+
+  /** Serves small bounded draws from 8-bit slices of one 64-bit draw of the underlying source, so a
+   * zeroMean( 1 ) costs about an eighth of a full draw. Slices that would bias the result are rejected.
+   */
+  public static class BitSliced implements RandomSource {
+    RandomSource m_source;
+
+    // the unused slices of the last draw, and how many are left
+    long m_bits;
+    int m_slices;
+
+    // the last bound and its rejection threshold, so repeated draws with one bound skip the division
+    int m_bound;
+    int m_threshold;
+
+    public BitSliced( RandomSource source ) { m_source = source; }
+
+    public int nextInt() { return m_source.nextInt(); }
+
+    public long nextLong() { return m_source.nextLong(); }
+
+    public int nextInt( int bound ) {
+      if ( bound > 256 )
+        return m_source.nextInt( bound );
+
+      // Lemire's multiply-shift on 8 bits, rejecting the few low products that would bias the result
+      if ( bound != m_bound ) {
+        m_bound = bound;
+        m_threshold = 256 % bound;
+      }
+
+      while ( true ) {
+        if ( m_slices == 0 ) {
+          m_bits = m_source.nextLong();
+          m_slices = 8;
+        }
+
+        int m = ( (int)m_bits & 0xff ) * bound;
+        m_bits >>>= 8;
+        --m_slices;
+
+        if ( ( m & 0xff ) >= m_threshold )
+          return m >>> 8;
+      }
+    }
+
+    public RandomSource split() { return new BitSliced( m_source.split() ); }
+
+    public void save( DataOutput out ) throws IOException {
+      m_source.save( out );
+      out.writeLong( m_bits );
+      out.writeByte( m_slices );
+    }
+
+    public void restore( DataInput in ) throws IOException {
+      m_source.restore( in );
+      m_bits = in.readLong();
+      m_slices = in.readByte();
+    }
+  }
+
+  //===========================================================
+  //======================== FACTORY ==========================
+  //===========================================================
+
+  // the source the engine uses unless told otherwise
+  public final static String DEFAULT = "sliced-xoroshiro";
+
+  /** Creates a source by name.
+   * @param name one of jdk, splittable, xoroshiro or pcg, optionally prefixed with sliced- to serve small
+   *   draws from slices of 64-bit draws, see BitSliced.
+   * @param seed the seed.
+   */
+  public static RandomSource create( String name, long seed ) {
+    boolean sliced = name.startsWith( "sliced-" );
+    if ( sliced )
+      name = name.substring( "sliced-".length() );
+
+    RandomSource source;
+
+    if ( name.equals( "jdk" ) )
+      source = new Jdk( seed );
+    else if ( name.equals( "splittable" ) )
+      source = new Splittable( seed );
+    else if ( name.equals( "xoroshiro" ) )
+      source = new Xoroshiro( seed );
+    else if ( name.equals( "pcg" ) )
+      source = new Pcg( seed );
+    else
+      throw new IllegalArgumentException( "unknown random source: " + name );
+
+    return sliced ? new BitSliced( source ) : source;
+  }
+
+  /** The splitmix64 finalizer, used to spread seeds over the state of the generators.
+   */
+  public static long splitMix( long z ) {
+    z = ( z ^ ( z >>> 30 ) ) * 0xbf58476d1ce4e5b9L;
+    z = ( z ^ ( z >>> 27 ) ) * 0x94d049bb133111ebL;
+    return z ^ ( z >>> 31 );
+  }
+}
@@ -0,0 +1,244 @@
+package randomwalk;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+
+/**
+ * Builds a draw list from a scene file, so walker setups can be changed without recompiling. A scene is a
+ * properties file that lists groups of walkers, added to the draw list in order:
+ *
+ * <pre>
+ * walkers = center, noise
+ *
+ * # type is one of generic, blending, perturb or noisy
+ * center.type = blending
+ * center.count = 1
+ * # start position in pixels, or in percent of the canvas (the default is 50%)
+ * center.x = 50%
+ * center.y = 50%
+ * # maximum step per update, or step.x and step.y (the default is 1)
+ * center.step = 1
+ * # color space of generic and blending walkers: r, g, b, y or rgb (the default)
+ * center.color = rgb
+ * # blending factor of blending walkers (the default is .3)
+ * center.alpha = .3
+ *
+ * noise.type = perturb
+ * noise.count = 100000
+ * # per-channel perturbation of perturb walkers, or the noisiness of noisy pens (the default is 1)
+ * noise.perturb = 2, 2, 8
+ * # whether the group is one WalkerPool or one object per walker (the default is a pool for count > 1)
+ * noise.pool = true
+ * # spawn the walkers in bulk by a placement instead of at x, y, see Placement.create()
+ * noise.place = gaussian:100
+ * </pre>
+ *
+ * Noisy pens also take pen = r, g, b, the starting color (the default is 127, 127, 127). Unknown keys are
+ * errors, so typos do not silently run the wrong scene.
+ */
+public class Scene {
+  final static String[] KEYS = { "type", "count", "pool", "x", "y", "step", "step.x", "step.y", "color", "alpha",
+      "perturb", "pen", "place" };
+
+  /** Reads a scene file.
+   * @param file the properties file.
+   */
+  public static Properties read( File file ) throws IOException {
+    Properties scene = new Properties();
+
+    try ( Reader in = new FileReader( file ) ) {
+      scene.load( in );
+    }
+
+    return scene;
+  }
+
+  /** Adds the walkers of a scene to the end of the engine's draw list.
+   * @param engine the engine, with its canvas size set.
+   * @param scene the scene, see read().
+   * @throws IllegalArgumentException if the scene is malformed.
+   * @throws IOException if the image of an image placement cannot be read.
+   */
+  public static void apply( WalkEngine engine, Properties scene ) throws IOException {
+    String list = scene.getProperty( "walkers" );
+    if ( list == null )
+      throw new IllegalArgumentException( "scene lists no walkers" );
+
+    HashSet<String> known = new HashSet<String>();
+    known.add( "walkers" );
+
+    for ( String name : list.split( "," ) ) {
+      name = name.trim();
+      for ( String key : KEYS )
+        known.add( name + "." + key );
+
+      addGroup( engine, scene, name );
+    }
+
+    for ( String key : scene.stringPropertyNames() )
+      if ( !known.contains( key ) )
+        throw new IllegalArgumentException( "unknown scene key " + key );
+  }
+
+  /** Adds the walkers of one group of the scene.
+   */
+  static void addGroup( WalkEngine engine, Properties scene, String name ) throws IOException {
+    String type = get( scene, name, "type", null );
+    if ( type == null )
+      throw new IllegalArgumentException( "walkers " + name + " have no type" );
+
+    int count = integer( scene, name, "count", "1" );
+    boolean pool = get( scene, name, "pool", "" + ( count > 1 ) ).equals( "true" );
+
+    int x = position( scene, name, "x", engine.width() );
+    int y = position( scene, name, "y", engine.height() );
+    int step = integer( scene, name, "step", "" + WalkEngine.X_WALK );
+    int stepX = integer( scene, name, "step.x", "" + step );
+    int stepY = integer( scene, name, "step.y", "" + step );
+
+    String space = get( scene, name, "color", "rgb" );
+    float alpha = Float.parseFloat( get( scene, name, "alpha", ".3" ) );
+    int[] perturb = triple( scene, name, "perturb", "1" );
+    int[] pen = triple( scene, name, "pen", "127" );
+    int penColor = engine.color( pen[0], pen[1], pen[2] );
+    String place = get( scene, name, "place", null );
+
+    if ( pool ) {
+      WalkEngine.WalkerPool p = engine.new WalkerPool( poolType( type ), poolSpace( space ), count );
+      p.setPerturbation( perturb[0], perturb[1], perturb[2] );
+
+      int col = p.m_type == WalkEngine.WalkerPool.NOISY ? penColor : p.initialColor();
+      if ( place != null )
+        p.spawn( count, Placement.create( place ), col, alpha );
+      else
+        for ( int i = 0; i < count; ++i )
+          p.add( x, y, col, alpha );
+
+      for ( int i = 0; i < count; ++i )
+        p.setStep( i, stepX, stepY );
+
+      engine.add( p );
+      return;
+    }
+
+    int[] xs = new int[ count ];
+    int[] ys = new int[ count ];
+    if ( place != null ) {
+      Placement.create( place ).place( xs, ys, 0, count, engine.width(), engine.height(), engine.newStream() );
+    } else {
+      Arrays.fill( xs, x );
+      Arrays.fill( ys, y );
+    }
+
+    for ( int i = 0; i < count; ++i ) {
+      WalkEngine.RandomWalk walk;
+      x = xs[i];
+      y = ys[i];
+
+      if ( type.equals( "generic" ) )
+        walk = engine.new GenericWalker( x, y, colorSpace( engine, space ) );
+      else if ( type.equals( "blending" ) )
+        walk = engine.new BlendingWalker( x, y, colorSpace( engine, space ), alpha );
+      else if ( type.equals( "perturb" ) )
+        walk = engine.new PerturbWalker( x, y, perturb[0], perturb[1], perturb[2] );
+      else if ( type.equals( "noisy" ) )
+        walk = engine.new NoisyPen( x, y, penColor, perturb[0] );
+      else
+        throw new IllegalArgumentException( "unknown walker type " + type );
+
+      walk.setStep( stepX, stepY );
+      engine.add( walk );
+    }
+  }
+
+  static int poolType( String type ) {
+    if ( type.equals( "generic" ) )
+      return WalkEngine.WalkerPool.GENERIC;
+    else if ( type.equals( "blending" ) )
+      return WalkEngine.WalkerPool.BLENDING;
+    else if ( type.equals( "perturb" ) )
+      return WalkEngine.WalkerPool.PERTURB;
+    else if ( type.equals( "noisy" ) )
+      return WalkEngine.WalkerPool.NOISY;
+    else
+      throw new IllegalArgumentException( "unknown walker type " + type );
+  }
+
+  static int poolSpace( String space ) {
+    if ( space.equals( "r" ) )
+      return WalkEngine.WalkerPool.R_SPACE;
+    else if ( space.equals( "g" ) )
+      return WalkEngine.WalkerPool.G_SPACE;
+    else if ( space.equals( "b" ) )
+      return WalkEngine.WalkerPool.B_SPACE;
+    else if ( space.equals( "y" ) )
+      return WalkEngine.WalkerPool.Y_SPACE;
+    else if ( space.equals( "rgb" ) )
+      return WalkEngine.WalkerPool.RGB_SPACE;
+    else
+      throw new IllegalArgumentException( "unknown color space " + space );
+  }
+
+  // each walker gets its own color space, see WalkEngine.ColorSpace
+  static WalkEngine.ColorSpace colorSpace( WalkEngine engine, String space ) {
+    switch ( poolSpace( space ) ) {
+      case WalkEngine.WalkerPool.R_SPACE:
+        return engine.new RWalk();
+      case WalkEngine.WalkerPool.G_SPACE:
+        return engine.new GWalk();
+      case WalkEngine.WalkerPool.B_SPACE:
+        return engine.new BWalk();
+      case WalkEngine.WalkerPool.Y_SPACE:
+        return engine.new YWalk();
+      default:
+        return engine.new RGBWalk();
+    }
+  }
+
+  //===========================================================
+  //======================== PARSING ==========================
+  //===========================================================
+
+  static String get( Properties scene, String name, String key, String fallback ) {
+    String value = scene.getProperty( name + "." + key );
+    return value == null ? fallback : value.trim();
+  }
+
+  static int integer( Properties scene, String name, String key, String fallback ) {
+    String value = get( scene, name, key, fallback );
+
+    try {
+      return Integer.parseInt( value );
+    } catch ( NumberFormatException e ) {
+      throw new IllegalArgumentException( name + "." + key + " is not an integer: " + value );
+    }
+  }
+
+  // a coordinate in pixels, or in percent of side
+  static int position( Properties scene, String name, String key, int side ) {
+    String value = get( scene, name, key, "50%" );
+
+    if ( value.endsWith( "%" ) )
+      return (int)( side * Float.parseFloat( value.substring( 0, value.length() - 1 ) ) / 100 );
+
+    return integer( scene, name, key, value );
+  }
+
+  // three comma-separated integers, or one for all three
+  static int[] triple( Properties scene, String name, String key, String fallback ) {
+    String[] parts = get( scene, name, key, fallback ).split( "," );
+    if ( parts.length != 1 && parts.length != 3 )
+      throw new IllegalArgumentException( name + "." + key + " needs one or three values" );
+
+    int[] values = new int[ 3 ];
+    for ( int i = 0; i < 3; ++i )
+      values[i] = Integer.parseInt( parts[ parts.length == 1 ? 0 : i ].trim() );
+
+    return values;
+  }
+}
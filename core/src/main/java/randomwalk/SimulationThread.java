@@ -0,0 +1,212 @@
+package randomwalk;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Ticks a WalkEngine continuously on a background thread, so the walk never waits for the display.
+ *
+ * The engine draws into a canvas owned by this thread. Every few milliseconds the thread publishes a Frame: a
+ * copy of the canvas in one of two display buffers, handed over atomically. The display takes the latest frame
+ * with poll() and gives back the buffer it showed before, so a frame is never written while it is shown and
+ * never shows a half-drawn tick. Only the regions that changed since a buffer was last published are copied.
+ *
+ * An engine drawing into a Canvas.Hdr keeps it, and the frames are tone mapped from it as they are published.
+ */
+public class SimulationThread extends Thread {
+  // how long a batch of ticks between publishes should take
+  final static long BATCH_NANOS = 2000000;
+
+  /** A published copy of the canvas.
+   */
+  public static class Frame {
+    // the colors, in the layout of PApplet.pixels
+    public int[] m_pixels;
+
+    // the region that changed since the previous frame, x, y, width and height, or all zeros if none did
+    public int[] m_region = new int[ 4 ];
+
+    Frame( int pixels ) { m_pixels = new int[ pixels ]; }
+  }
+
+  WalkEngine m_engine;
+  int[] m_pixels;
+
+  // the engine's HDR canvas, which replaces m_pixels, or null
+  Canvas.Hdr m_hdr;
+
+  // the frame the display shows first
+  Frame m_front;
+
+  // the latest frame, until the display takes it
+  AtomicReference<Frame> m_ready;
+
+  // the buffer to publish next, handed back by the display; null while the display has not taken the last frame
+  AtomicReference<Frame> m_spare;
+
+  // the region drawn since the last publish, the region of the last publish, and the dirty region of a batch
+  int[] m_pending;
+  int[] m_published;
+  int[] m_rect;
+
+  // ticks per batch, adapted to BATCH_NANOS
+  long m_batch;
+
+  volatile boolean m_running;
+  volatile boolean m_clear;
+
+  // work to run between batches, see between()
+  ConcurrentLinkedQueue<Runnable> m_tasks;
+
+  /**
+   * @param engine the engine to tick. Its canvas is replaced by one owned by this thread, starting as a copy of
+   *   it (or cleared to black if it has none), so a restored checkpoint carries over. A Canvas.Hdr is kept.
+   */
+  public SimulationThread( WalkEngine engine ) {
+    super( "simulation" );
+    setDaemon( true );
+
+    m_engine = engine;
+    int pixels = engine.width() * engine.height();
+
+    m_pixels = new int[ pixels ];
+    Canvas canvas = engine.canvas();
+    for ( int i = 0; i < pixels; ++i )
+      m_pixels[i] = canvas != null ? canvas.get( i ) : 0xff000000;
+    if ( canvas instanceof Canvas.Hdr )
+      m_hdr = (Canvas.Hdr)canvas;
+    else
+      engine.setPixels( m_pixels );
+    engine.setTrackDirty( true );
+
+    // both display buffers start as the starting canvas
+    m_front = new Frame( pixels );
+    Frame spare = new Frame( pixels );
+    System.arraycopy( m_pixels, 0, m_front.m_pixels, 0, pixels );
+    System.arraycopy( m_pixels, 0, spare.m_pixels, 0, pixels );
+
+    m_ready = new AtomicReference<Frame>();
+    m_spare = new AtomicReference<Frame>( spare );
+    m_pending = new int[ 4 ];
+    m_published = new int[ 4 ];
+    m_rect = new int[ 4 ];
+    m_batch = 1;
+    m_running = true;
+    m_tasks = new ConcurrentLinkedQueue<Runnable>();
+  }
+
+  public void run() {
+    while ( m_running ) {
+      if ( m_clear ) {
+        m_clear = false;
+        Arrays.fill( m_pixels, 0xff000000 );
+        if ( m_hdr != null )
+          m_hdr.clear();
+        m_engine.touchAll();
+      }
+
+      for ( Runnable task = m_tasks.poll(); task != null; task = m_tasks.poll() )
+        task.run();
+
+      long start = System.nanoTime();
+
+      for ( long i = 0; i < m_batch; ++i )
+        m_engine.tick();
+
+      // grow at most 2x per batch, like the sketch's frame scheduler
+      long elapsed = Math.max( 1, System.nanoTime() - start );
+      m_batch = Math.max( 1, Math.min( 2 * m_batch, m_batch * BATCH_NANOS / elapsed ) );
+
+      if ( m_engine.dirtyBounds( m_rect ) )
+        union( m_pending, m_rect[0], m_rect[1], m_rect[2], m_rect[3] );
+
+      publish();
+    }
+  }
+
+  /** Copies the canvas into the spare buffer and makes it the ready frame, if the display gave one back.
+   */
+  void publish() {
+    if ( m_pending[2] == 0 )
+      return;
+
+    Frame frame = m_spare.getAndSet( null );
+    if ( frame == null )
+      return;
+
+    // the spare buffer is two frames old, so it misses the last publish as well as this one
+    System.arraycopy( m_published, 0, m_rect, 0, 4 );
+    union( m_rect, m_pending[0], m_pending[1], m_pending[2], m_pending[3] );
+    copyRegion( frame.m_pixels, m_rect );
+
+    System.arraycopy( m_pending, 0, frame.m_region, 0, 4 );
+    System.arraycopy( m_pending, 0, m_published, 0, 4 );
+    Arrays.fill( m_pending, 0 );
+
+    m_ready.set( frame );
+  }
+
+  void copyRegion( int[] to, int[] rect ) {
+    int width = m_engine.width();
+
+    if ( m_hdr != null ) {
+      m_hdr.toneMap( to, rect[0], rect[1], rect[2], rect[3] );
+      return;
+    }
+
+    for ( int y = rect[1]; y < rect[1] + rect[3]; ++y )
+      System.arraycopy( m_pixels, y * width + rect[0], to, y * width + rect[0], rect[2] );
+  }
+
+  /** Grows rect, x, y, width and height or all zeros for an empty rect, to cover the given one.
+   */
+  static void union( int[] rect, int x, int y, int w, int h ) {
+    if ( rect[2] == 0 ) {
+      rect[0] = x;
+      rect[1] = y;
+      rect[2] = w;
+      rect[3] = h;
+      return;
+    }
+
+    int x1 = Math.max( rect[0] + rect[2], x + w );
+    int y1 = Math.max( rect[1] + rect[3], y + h );
+    rect[0] = Math.min( rect[0], x );
+    rect[1] = Math.min( rect[1], y );
+    rect[2] = x1 - rect[0];
+    rect[3] = y1 - rect[1];
+  }
+
+  /** Returns the frame to show before the first poll(), the starting canvas.
+   */
+  public Frame front() { return m_front; }
+
+  /** Returns the latest frame if one was published since the last call, or null.
+   * @param shown the frame the display showed until now, front() at first. If a frame is returned, shown is
+   *   handed back to be published into and must not be used any more.
+   */
+  public Frame poll( Frame shown ) {
+    Frame frame = m_ready.getAndSet( null );
+    if ( frame != null )
+      m_spare.set( shown );
+
+    return frame;
+  }
+
+  /** Clears the canvas to black before the next batch of ticks.
+   */
+  public void clear() { m_clear = true; }
+
+  /** Runs a task on this thread between two batches of ticks, when the engine is safe to read, e.g. to write a
+   * Checkpoint. Tasks must not draw into the canvas.
+   */
+  public void between( Runnable task ) { m_tasks.add( task ); }
+
+  /** Stops ticking and waits for the current batch to finish.
+   */
+  public void shutdown() throws InterruptedException {
+    m_running = false;
+    join();
+  }
+}
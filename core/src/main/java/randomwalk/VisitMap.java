@@ -0,0 +1,146 @@
+package randomwalk;
+
+import java.util.Arrays;
+
+/**
+ * Counts the visits of the walkers to every pixel of the canvas, for density heatmaps of the walk, see
+ * WalkEngine.setVisits(). Every plot counts one visit to its pixel, at the cost of an increment.
+ *
+ * Like the canvas, a map is not thread safe, but the parallel engine only counts the visits to a band of the
+ * canvas on the thread that owns it, so the counts are the same for any number of threads. Counts saturate
+ * instead of wrapping around.
+ */
+public interface VisitMap {
+  public int width();
+
+  public int height();
+
+  /** Counts a visit to index i, y * width + x. */
+  public void visit( int i );
+
+  /** Returns the number of visits to index i, y * width + x. */
+  public int count( int i );
+
+  /** Sets every count to 0. */
+  public void clear();
+
+  /** Returns the largest count. */
+  default public int max() {
+    int max = 0;
+    for ( int i = 0, n = width() * height(); i < n; ++i )
+      max = Math.max( max, count( i ) );
+
+    return max;
+  }
+
+  /** Renders the counts as a heatmap, log-scaled so both the rarely and the constantly visited areas show.
+   * @param pixels receives width * height colors in rows, like PApplet.pixels.
+   * @param palette the colors from no visits to the largest count, e.g. heat().
+   */
+  default public void toneMap( int[] pixels, int[] palette ) {
+    int max = max();
+    double scale = max > 0 ? ( palette.length - 1 ) / Math.log1p( max ) : 0;
+
+    for ( int i = 0, n = width() * height(); i < n; ++i )
+      pixels[i] = palette[ (int)( Math.log1p( count( i ) ) * scale ) ];
+  }
+
+  //===========================================================
+  //===================== IMPLEMENTATIONS =====================
+  //===========================================================
+
+  /** Counts in an int per pixel, up to 2^31 - 1 visits.
+   */
+  public static class Ints implements VisitMap {
+    int m_width;
+    int m_height;
+    int[] m_counts;
+
+    public Ints( int width, int height ) {
+      m_width = width;
+      m_height = height;
+      m_counts = new int[ size( width, height ) ];
+    }
+
+    public int width() { return m_width; }
+
+    public int height() { return m_height; }
+
+    public void visit( int i ) {
+      // an overflow to MIN_VALUE steps back to MAX_VALUE, without a branch
+      int c = m_counts[i] + 1;
+      m_counts[i] = c - ( c >>> 31 );
+    }
+
+    public int count( int i ) { return m_counts[i]; }
+
+    public void clear() { Arrays.fill( m_counts, 0 ); }
+  }
+
+  /** Counts in an unsigned 16-bit char per pixel, up to 65535 visits, in half the memory of Ints.
+   */
+  public static class Shorts implements VisitMap {
+    int m_width;
+    int m_height;
+    char[] m_counts;
+
+    public Shorts( int width, int height ) {
+      m_width = width;
+      m_height = height;
+      m_counts = new char[ size( width, height ) ];
+    }
+
+    public int width() { return m_width; }
+
+    public int height() { return m_height; }
+
+    public void visit( int i ) {
+      // 65536 steps back to 65535, without a branch
+      int c = m_counts[i] + 1;
+      m_counts[i] = (char)( c - ( c >>> 16 ) );
+    }
+
+    public int count( int i ) { return m_counts[i]; }
+
+    public void clear() { Arrays.fill( m_counts, (char)0 ); }
+  }
+
+  //===========================================================
+  //======================== FACTORY ==========================
+  //===========================================================
+
+  /** Creates a map by name.
+   * @param name ints or shorts.
+   */
+  public static VisitMap create( String name, int width, int height ) {
+    if ( name.equals( "ints" ) )
+      return new Ints( width, height );
+    else if ( name.equals( "shorts" ) )
+      return new Shorts( width, height );
+    else
+      throw new IllegalArgumentException( "unknown visit map: " + name );
+  }
+
+  /** Returns a 256-color palette from black through red and yellow to white.
+   */
+  public static int[] heat() {
+    int[] palette = new int[ 256 ];
+
+    for ( int i = 0; i < 256; ++i ) {
+      int r = Math.min( 255, i * 3 );
+      int g = Math.min( 255, Math.max( 0, i * 3 - 255 ) );
+      int b = Math.min( 255, Math.max( 0, i * 3 - 510 ) );
+      palette[i] = 0xff000000 | ( r << 16 ) | ( g << 8 ) | b;
+    }
+
+    return palette;
+  }
+
+  // the number of counts of a map, which must fit in an array
+  static int size( int width, int height ) {
+    if ( width <= 0 || height <= 0 || (long)width * height > Integer.MAX_VALUE - 8 )
+      throw new IllegalArgumentException( "bad visit map size " + width + "x" + height );
+
+    return width * height;
+  }
+}
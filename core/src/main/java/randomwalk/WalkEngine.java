@@ -0,0 +1,1112 @@
+package randomwalk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * The simulation core of the random walk. Holds the draw list, the randomness source and the canvas the walkers
+ * draw into, but does not depend on a PApplet, so the same walkers can run inside the sketch or headless.
+ * The canvas is a Canvas of packed ARGB colors, laid out like PApplet.pixels: an array on the heap, or a file
+ * mapped outside it for canvases larger than the heap.
+ */
+public class WalkEngine {
+  // the default canvas side
+  public final static int SIDE = 1024;
+  public final static int X_WALK = 1;
+  public final static int Y_WALK = 1;
+
+  // the randomness source for everything
+  RandomSource m_rand;
+
+  // the draw list
+  ArrayList<Drawable> m_draw;
+
+  // the canvas the walkers draw into
+  Canvas m_canvas;
+
+  // the canvas if it is a Canvas.Hdr, which blending and perturbing walkers draw into without rounding, or null
+  Canvas.Hdr m_hdr;
+
+  // the canvas size, and the masks that wrap coordinates for power-of-two sizes (-1 for other sizes)
+  int m_width;
+  int m_height;
+  int m_xmask;
+  int m_ymask;
+
+  // runs the ticks on several threads, null to tick on the calling thread
+  ParallelTicker m_ticker;
+
+  // the flags per DIRTY_TILE x DIRTY_TILE tile of the canvas, DIRTY_SHOWN and DIRTY_SAVED, or null when nothing
+  // asked for them. Ticks only ever set both flags, so bands on different threads can share them.
+  byte[] m_dirty;
+  int m_dirtyCols;
+
+  // counts the visits of every plot, or null
+  VisitMap m_visits;
+
+  // whether the color functions use the original float math instead of ColorKernel
+  boolean m_referenceColor;
+
+  // the number of ticks run, carried over by checkpoints
+  long m_ticks;
+
+  public WalkEngine() {
+    this( RandomSource.create( RandomSource.DEFAULT, System.nanoTime() ) );
+  }
+
+  /**
+   * @param rand the master randomness source, see WalkEngine( RandomSource, int, int ).
+   */
+  public WalkEngine( RandomSource rand ) { this( rand, SIDE, SIDE ); }
+
+  /**
+   * @param rand the master randomness source. Every walker, pool block and color space splits its own stream
+   *   from it when it is constructed, so a seeded source and the same construction order reproduce the walk
+   *   exactly, however the ticks are batched or threaded.
+   * @param width the width of the canvas.
+   * @param height the height of the canvas.
+   */
+  public WalkEngine( RandomSource rand, int width, int height ) {
+    if ( width <= 0 || height <= 0 )
+      throw new IllegalArgumentException( "bad canvas size " + width + "x" + height );
+
+    m_rand = rand;
+    m_draw = new ArrayList<Drawable>();
+
+    m_width = width;
+    m_height = height;
+    m_xmask = ( width & ( width - 1 ) ) == 0 ? width - 1 : -1;
+    m_ymask = ( height & ( height - 1 ) ) == 0 ? height - 1 : -1;
+  }
+
+  //===========================================================
+  //=============== INTERFACES AND BASE CLASS =================
+  //===========================================================
+
+  /** Interface for drawable objects.
+   * draw() is called once per tick and should perform any updates that should happen at that time.
+   */
+  public interface Drawable { public void draw(); }
+
+  /** Interface for drawables that the parallel engine can advance on several threads.
+   * A tick is split in two: move() steps the walkers and advances their color states without touching the
+   * canvas, then plot() draws each walker at its new position. All randomness is drawn in move(), from a stream
+   * owned by the block being moved, so blocks can move concurrently. draw() must be equivalent to calling
+   * move( b ) and then plot() on each of its walkers in order, for each block in order.
+   */
+  public interface ParallelDrawable extends Drawable {
+    /** Returns the number of blocks, each moved by one thread at a time. */
+    public int blocks();
+
+    /** Returns the first walker of block b. Block b holds the walkers [ blockStart( b ), blockStart( b + 1 ) ). */
+    public int blockStart( int b );
+
+    /** Moves the walkers of block b and advances their color states. Must not touch the canvas. */
+    public void move( int b );
+
+    /** Returns the canvas index of walker i. */
+    public long index( int i );
+
+    /** Draws walker i at its current position. */
+    public void plot( int i );
+  }
+
+  /** Interface for objects that define walks in color spaces.
+   * mutate() should return the current color and transition to the next state. The color spaces here draw from
+   * their own stream, so under the parallel engine each walker needs its own color space.
+   */
+  public interface ColorSpace { public int mutate(); }
+
+  /** Defines a basic random walk. Each walk is a single-walker block for the parallel engine, with its own
+   * random stream split from the engine's.
+   */
+  public abstract class RandomWalk implements ParallelDrawable {
+    // current position, always on the canvas
+    int m_x;
+    int m_y;
+
+    // maximum walk distances in x and y
+    int m_ywalk;
+    int m_xwalk;
+
+    // the randomness source for this walk
+    RandomSource m_rand;
+
+    /**
+     * @param x the starting x position of this random walk.
+     * @param y the starting y position of this random walk.
+     * @param x_amount the maximum walk distance in x per update.
+     * @param y_amount the maximum walk distance in y per update.
+     */
+    public RandomWalk( int x, int y, int x_amount, int y_amount ) {
+      m_x = wrapX( x );
+      m_y = wrapY( y );
+      m_xwalk = x_amount;
+      m_ywalk = y_amount;
+      m_rand = newStream();
+    }
+
+    /**
+     * Makes one step and wraps around the edge of the screen if necessary.
+     */
+    public void update() {
+      // perturb the position and keep it in the screen
+      m_x = wrapX( m_x + m_rand.zeroMean( m_xwalk ) );
+      m_y = wrapY( m_y + m_rand.zeroMean( m_ywalk ) );
+    }
+
+    /**
+     * Sets the maximum walk distances per update.
+     * @param x_amount the maximum walk distance in x.
+     * @param y_amount the maximum walk distance in y.
+     */
+    public void setStep( int x_amount, int y_amount ) {
+      m_xwalk = x_amount;
+      m_ywalk = y_amount;
+    }
+
+    /**
+     * Returns the canvas index that corresponds to the current position.
+     */
+    public long index() { return (long)m_y * m_width + m_x; }
+
+    /**
+     * Sets the current pixel of this walk to the color c.
+     * @param c The color to set the current pixel to.
+     */
+    public void setCurrentPixel( int c ) {
+      touch( m_x, m_y );
+      m_canvas.set( index(), c );
+    }
+
+    /**
+     * Sets the current pixel of this walk to the color c with blending factor alpha. Knocks out black components.
+     * @param c The color to set the current pixel to.
+     * @param alpha The blending factor (should be on [0, 1]).
+     */
+    public void setCurrentPixel( int c, float alpha ) {
+      long idx = index();
+
+      touch( m_x, m_y );
+      if ( m_hdr != null )
+        m_hdr.blend( idx, c, alpha );
+      else
+        m_canvas.set( idx, interpColorKnockout( c, m_canvas.get( idx ), alpha ) );
+    }
+
+    public void draw() {
+      move( 0 );
+      plot( 0 );
+    }
+
+    public int blocks() { return 1; }
+
+    public int blockStart( int b ) { return b; }
+
+    public long index( int i ) { return index(); }
+  }
+
+  //===========================================================
+  //===================== WALKER CLASSES ======================
+  //===========================================================
+
+  /** Generic random walker, replaces its current position pixel with the next sample from its colorspace.
+  */
+  public class GenericWalker extends RandomWalk {
+    ColorSpace m_cspace;
+    int m_next;
+
+    public GenericWalker( int x, int y, ColorSpace colorspace ) {
+      super( x, y, X_WALK, Y_WALK );
+      m_cspace = colorspace;
+    }
+
+    public void move( int b ) {
+      update();
+      m_next = m_cspace.mutate();
+    }
+
+    public void plot( int i ) { setCurrentPixel( m_next ); }
+  }
+
+  /** Generic blending random walker, blends its current position pixel with the next sample from its
+   * colorspace by the input blending parameter, ignoring black components.
+   */
+  public class BlendingWalker extends RandomWalk {
+    ColorSpace m_cspace;
+    float m_alpha;
+    int m_next;
+
+    public BlendingWalker( int x, int y, ColorSpace colorspace, float alpha ) {
+      super( x, y, X_WALK, Y_WALK );
+      m_cspace = colorspace;
+      m_alpha = alpha;
+    }
+
+    public void move( int b ) {
+      update();
+      m_next = m_cspace.mutate();
+    }
+
+    public void plot( int i ) { setCurrentPixel( m_next, m_alpha ); }
+  }
+
+  /** Performs a random walk and perturbs the color coordinates of its current pixel by their corresponding
+   * perturbation parameters.
+   */
+  public class PerturbWalker extends RandomWalk {
+    int m_pr;
+    int m_pg;
+    int m_pb;
+
+    // the perturbation drawn for the next plot
+    int m_dr;
+    int m_dg;
+    int m_db;
+
+    public PerturbWalker( int x, int y, int perturb_red, int perturb_green, int perturb_blue ) {
+      super( x, y, X_WALK, Y_WALK );
+      m_pr  = perturb_red;
+      m_pg  = perturb_green;
+      m_pb  = perturb_blue;
+    }
+
+    public void move( int b ) {
+      update();
+
+      m_dr = m_rand.zeroMean( m_pr );
+      m_dg = m_rand.zeroMean( m_pg );
+      m_db = m_rand.zeroMean( m_pb );
+    }
+
+    public void plot( int i ) {
+      long idx = index();
+
+      touch( m_x, m_y );
+      if ( m_hdr != null )
+        m_hdr.offset( idx, m_dr, m_dg, m_db );
+      else
+        m_canvas.set( idx, offsetColor( m_canvas.get( idx ), m_dr, m_dg, m_db ) );
+    }
+  }
+
+  /** Performs a random walk and replaces the current pixel with its current color state, which is perturbed
+   * by up to the input amount in each component at each pixel.
+   */
+  public class NoisyPen extends RandomWalk {
+    int m_color;
+    int m_r;
+
+    public NoisyPen( int x, int y, int col, int noisiness ) {
+      super( x, y, X_WALK, Y_WALK );
+      m_color = col;
+      m_r = noisiness;
+    }
+
+    public void move( int b ) {
+      update();
+
+      perturbPenColor();
+    }
+
+    public void plot( int i ) { setCurrentPixel( m_color ); }
+
+    private void perturbPenColor() {
+      m_color = perturbColor( m_rand, m_color, m_r, m_r, m_r );
+    }
+  }
+
+  //===========================================================
+  //====================== WALKER POOLS =======================
+  //===========================================================
+
+  /** Many walkers of one type stored as parallel primitive arrays and advanced in one tight loop, for
+   * populations far too large to keep as one RandomWalk object per walker. The walker type and color space
+   * are shared by the whole pool, positions, step radii, color states and blend factors are per walker.
+   * Walkers are grouped in blocks of BLOCK walkers that share a random stream, the unit of parallel work.
+   */
+  public class WalkerPool implements ParallelDrawable {
+    // walker types, matching GenericWalker, BlendingWalker, PerturbWalker and NoisyPen
+    final static int GENERIC = 0;
+    final static int BLENDING = 1;
+    final static int PERTURB = 2;
+    final static int NOISY = 3;
+
+    // color spaces of the generic and blending walkers, matching RWalk, GWalk, BWalk, YWalk and RGBWalk
+    final static int R_SPACE = 0;
+    final static int G_SPACE = 1;
+    final static int B_SPACE = 2;
+    final static int Y_SPACE = 3;
+    final static int RGB_SPACE = 4;
+
+    // walkers per block
+    final static int BLOCK = 4096;
+
+    int m_type;
+    int m_cspace;
+
+    // per-channel perturbation of the perturb walkers, or the noisiness of the noisy pens in m_pr
+    int m_pr;
+    int m_pg;
+    int m_pb;
+
+    // the walker state, only the first m_size entries are live
+    int m_size;
+    int[] m_x;
+    int[] m_y;
+    int[] m_xwalk;
+    int[] m_ywalk;
+    int[] m_color;
+    float[] m_alpha;
+
+    // the perturbation drawn for the next plot of perturb walkers, packed by packOffset()
+    int[] m_offset;
+
+    // one random stream per block
+    RandomSource[] m_rands;
+
+    /**
+     * @param type the walker type, one of GENERIC, BLENDING, PERTURB or NOISY.
+     * @param cspace the color space of generic and blending walkers, one of R_SPACE, G_SPACE, B_SPACE, Y_SPACE or
+     *   RGB_SPACE. Ignored by the other types.
+     * @param capacity the initial number of walkers to allocate room for.
+     */
+    public WalkerPool( int type, int cspace, int capacity ) {
+      m_type = type;
+      m_cspace = cspace;
+      m_pr = m_pg = m_pb = 1;
+
+      capacity = Math.max( 1, capacity );
+      m_x = new int[ capacity ];
+      m_y = new int[ capacity ];
+      m_xwalk = new int[ capacity ];
+      m_ywalk = new int[ capacity ];
+      m_color = new int[ capacity ];
+      m_alpha = new float[ capacity ];
+      m_offset = type == PERTURB ? new int[ capacity ] : null;
+      m_rands = new RandomSource[ 0 ];
+    }
+
+    /** Sets the per-channel perturbation of perturb walkers, or the noisiness of noisy pens (from red).
+     */
+    public void setPerturbation( int perturb_red, int perturb_green, int perturb_blue ) {
+      m_pr = perturb_red;
+      m_pg = perturb_green;
+      m_pb = perturb_blue;
+    }
+
+    /** Adds a walker to the pool.
+     * @param x the starting x position.
+     * @param y the starting y position.
+     * @param col the starting color state, see initialColor().
+     * @param alpha the blending factor of blending walkers.
+     * @return the index of the new walker.
+     */
+    public int add( int x, int y, int col, float alpha ) {
+      if ( m_size == m_x.length )
+        grow( m_size * 2 );
+
+      // every new block gets its own stream
+      if ( m_size % BLOCK == 0 ) {
+        m_rands = Arrays.copyOf( m_rands, m_rands.length + 1 );
+        m_rands[ m_rands.length - 1 ] = newStream();
+      }
+
+      int i = m_size++;
+      m_x[i] = wrapX( x );
+      m_y[i] = wrapY( y );
+      m_xwalk[i] = X_WALK;
+      m_ywalk[i] = Y_WALK;
+      m_color[i] = col;
+      m_alpha[i] = alpha;
+
+      return i;
+    }
+
+    /** Adds n walkers at once, placed by a placement strategy. Allocates once for all of them, so pools of
+     * millions of walkers start in milliseconds.
+     * @param n the number of walkers to add.
+     * @param placement places the walkers; it draws from a stream split from the engine's.
+     * @param col the starting color state of every walker, see initialColor().
+     * @param alpha the blending factor of blending walkers.
+     * @return the index of the first new walker.
+     */
+    public int spawn( int n, Placement placement, int col, float alpha ) {
+      int from = m_size;
+      if ( from + n > m_x.length )
+        grow( Math.max( from + n, m_x.length * 2 ) );
+
+      placement.place( m_x, m_y, from, n, m_width, m_height, newStream() );
+
+      m_size += n;
+      for ( int i = from; i < m_size; ++i ) {
+        m_x[i] = wrapX( m_x[i] );
+        m_y[i] = wrapY( m_y[i] );
+      }
+
+      Arrays.fill( m_xwalk, from, m_size, X_WALK );
+      Arrays.fill( m_ywalk, from, m_size, Y_WALK );
+      Arrays.fill( m_color, from, m_size, col );
+      Arrays.fill( m_alpha, from, m_size, alpha );
+
+      // every new block gets its own stream
+      int blocks = ( m_size + BLOCK - 1 ) / BLOCK;
+      int old = m_rands.length;
+      m_rands = Arrays.copyOf( m_rands, blocks );
+      for ( int b = old; b < blocks; ++b )
+        m_rands[b] = newStream();
+
+      return from;
+    }
+
+    /** Sets the maximum walk distances of walker i per update.
+     */
+    public void setStep( int i, int x_amount, int y_amount ) {
+      m_xwalk[i] = x_amount;
+      m_ywalk[i] = y_amount;
+    }
+
+    /** Returns the color the walkers of this pool's color space start from.
+     */
+    public int initialColor() {
+      switch ( m_cspace ) {
+        case R_SPACE:
+          return color( 127, 0, 0 );
+        case G_SPACE:
+          return color( 0, 127, 0 );
+        case B_SPACE:
+          return color( 0, 0, 127 );
+        case Y_SPACE:
+          return color( 127, 127, 0 );
+        default:
+          return color( 127, 127, 127 );
+      }
+    }
+
+    public int size() { return m_size; }
+
+    private void grow( int capacity ) {
+      m_x = Arrays.copyOf( m_x, capacity );
+      m_y = Arrays.copyOf( m_y, capacity );
+      m_xwalk = Arrays.copyOf( m_xwalk, capacity );
+      m_ywalk = Arrays.copyOf( m_ywalk, capacity );
+      m_color = Arrays.copyOf( m_color, capacity );
+      m_alpha = Arrays.copyOf( m_alpha, capacity );
+      if ( m_offset != null )
+        m_offset = Arrays.copyOf( m_offset, capacity );
+    }
+
+    @Override
+      public void draw() {
+        for ( int b = 0; b < m_rands.length; ++b ) {
+          move( b );
+
+          int end = blockStart( b + 1 );
+
+          // the type switch is hoisted out of the loops so each loop body is straight-line code
+          switch ( m_type ) {
+            case GENERIC:
+            case NOISY:
+              for ( int i = blockStart( b ); i < end; ++i ) {
+                touch( m_x[i], m_y[i] );
+                m_canvas.set( index( i ), m_color[i] );
+              }
+              break;
+            default:
+              for ( int i = blockStart( b ); i < end; ++i )
+                plot( i );
+              break;
+          }
+        }
+      }
+
+    public int blocks() { return m_rands.length; }
+
+    public int blockStart( int b ) { return Math.min( b * BLOCK, m_size ); }
+
+    public void move( int b ) {
+      RandomSource rand = m_rands[b];
+      int end = blockStart( b + 1 );
+
+      // hoisted so the loop over a power-of-two canvas is just masks
+      int xmask = m_xmask;
+      int ymask = m_ymask;
+
+      if ( xmask >= 0 && ymask >= 0 ) {
+        for ( int i = blockStart( b ); i < end; ++i ) {
+          m_x[i] = ( m_x[i] + rand.zeroMean( m_xwalk[i] ) ) & xmask;
+          m_y[i] = ( m_y[i] + rand.zeroMean( m_ywalk[i] ) ) & ymask;
+        }
+      } else {
+        for ( int i = blockStart( b ); i < end; ++i ) {
+          m_x[i] = wrapX( m_x[i] + rand.zeroMean( m_xwalk[i] ) );
+          m_y[i] = wrapY( m_y[i] + rand.zeroMean( m_ywalk[i] ) );
+        }
+      }
+
+      switch ( m_type ) {
+        case GENERIC:
+        case BLENDING:
+          for ( int i = blockStart( b ); i < end; ++i )
+            m_color[i] = mutate( rand, m_color[i] );
+          break;
+        case PERTURB:
+          for ( int i = blockStart( b ); i < end; ++i )
+            m_offset[i] = packOffset( rand.zeroMean( m_pr ), rand.zeroMean( m_pg ), rand.zeroMean( m_pb ) );
+          break;
+        case NOISY:
+          for ( int i = blockStart( b ); i < end; ++i )
+            m_color[i] = perturbColor( rand, m_color[i], m_pr, m_pr, m_pr );
+          break;
+        default:
+          break;
+      }
+    }
+
+    public long index( int i ) { return (long)m_y[i] * m_width + m_x[i]; }
+
+    public void plot( int i ) {
+      long idx = index( i );
+
+      touch( m_x[i], m_y[i] );
+
+      switch ( m_type ) {
+        case BLENDING:
+          if ( m_hdr != null )
+            m_hdr.blend( idx, m_color[i], m_alpha[i] );
+          else
+            m_canvas.set( idx, interpColorKnockout( m_color[i], m_canvas.get( idx ), m_alpha[i] ) );
+          break;
+        case PERTURB:
+          int o = m_offset[i];
+          int dr = o << 2 >> 22;
+          int dg = o << 12 >> 22;
+          int db = o << 22 >> 22;
+          if ( m_hdr != null )
+            m_hdr.offset( idx, dr, dg, db );
+          else
+            m_canvas.set( idx, offsetColor( m_canvas.get( idx ), dr, dg, db ) );
+          break;
+        default:
+          m_canvas.set( idx, m_color[i] );
+          break;
+      }
+    }
+
+    /** Returns the next color of the color space from c, like the ColorSpace objects.
+     */
+    private int mutate( RandomSource rand, int c ) {
+      switch ( m_cspace ) {
+        case R_SPACE:
+          return perturbColor( rand, c, 1, 0, 0 );
+        case G_SPACE:
+          return perturbColor( rand, c, 0, 1, 0 );
+        case B_SPACE:
+          return perturbColor( rand, c, 0, 0, 1 );
+        case Y_SPACE:
+          c = perturbColor( rand, c, 1, 0, 0 );
+          return yellow( c );
+        case RGB_SPACE:
+          switch ( rand.nextInt(3) ) {
+            case 0:
+              return perturbColor( rand, c, 1, 0, 0 );
+            case 1:
+              return perturbColor( rand, c, 0, 1, 0 );
+            default:
+              return perturbColor( rand, c, 0, 0, 1 );
+          }
+        default:
+          return c;
+      }
+    }
+
+    /** Packs an offset into 10 signed bits per channel. Offsets past 255 saturate any channel as 255 does, so
+     * they are clamped to it.
+     */
+    private int packOffset( int dr, int dg, int db ) {
+      dr = Math.max( -255, Math.min( 255, dr ) );
+      dg = Math.max( -255, Math.min( 255, dg ) );
+      db = Math.max( -255, Math.min( 255, db ) );
+      return ( ( dr & 0x3ff ) << 20 ) | ( ( dg & 0x3ff ) << 10 ) | ( db & 0x3ff );
+    }
+  }
+
+  //===========================================================
+  //================== COLOR SPACE OBJECTS ====================
+  //===========================================================
+
+  /** A random walk on the red axis of color space.
+  */
+  public class RWalk implements ColorSpace {
+    int m_color = color( 127, 0, 0 );
+    RandomSource m_rand = newStream();
+
+    public int mutate() {
+      m_color = perturbColor( m_rand, m_color, 1, 0, 0 );
+      return m_color;
+    }
+  }
+
+  /** A random walk on the green axis of color space.
+  */
+  public class GWalk implements ColorSpace {
+    int m_color = color( 0, 127, 0 );
+    RandomSource m_rand = newStream();
+
+    public int mutate() {
+      m_color = perturbColor( m_rand, m_color, 0, 1, 0 );
+      return m_color;
+    }
+  }
+
+  /** A random walk on the blue axis of color space.
+  */
+  public class BWalk implements ColorSpace {
+    int m_color = color( 0, 0, 127 );
+    RandomSource m_rand = newStream();
+
+    public int mutate() {
+      m_color = perturbColor( m_rand, m_color, 0, 0, 1 );
+      return m_color;
+    }
+  }
+
+  /** A coordinated random walk on the red and green axes of color space.
+  */
+  public class YWalk implements ColorSpace {
+    int m_color = color( 127, 127, 0 );
+    RandomSource m_rand = newStream();
+
+    public int mutate() {
+      m_color = perturbColor( m_rand, m_color, 1, 0, 0 );
+      m_color = yellow( m_color );
+      return m_color;
+    }
+  }
+
+  /** A random walk of one over a random axis of color space at each step.
+  */
+  public class RGBWalk implements ColorSpace {
+    int m_color = color( 127, 127, 127 );
+    RandomSource m_rand = newStream();
+
+    public int mutate() {
+      switch ( m_rand.nextInt(3) ) {
+        case 0:
+          m_color = perturbColor( m_rand, m_color, 1, 0, 0 );
+          break;
+        case 1:
+          m_color = perturbColor( m_rand, m_color, 0, 1, 0 );
+          break;
+        case 2:
+          m_color = perturbColor( m_rand, m_color, 0, 0, 1 );
+          break;
+        default:
+          break;
+      }
+
+      return m_color;
+    }
+  }
+
+  //===========================================================
+  //=================== ENGINE FUNCTIONS ======================
+  //===========================================================
+
+  /** Fills the draw list with the default scene.
+   */
+  public void addDefaultWalkers() {
+    int cx = m_width / 2;
+    int cy = m_height / 2;
+
+    // RGB blending walkers that start walking in the center of the screen
+    m_draw.add( new BlendingWalker( cx, cy, new RGBWalk(), .3f ) );
+//    m_draw.add( new BlendingWalker( cx, cy, new RGBWalk(), .3f ) );
+//    m_draw.add( new BlendingWalker( cx, cy, new RWalk(), .3f ) );
+//    m_draw.add( new BlendingWalker( cx, cy, new GWalk(), .15f ) );
+//    m_draw.add( new BlendingWalker( cx, cy, new BWalk(), .3f ) );
+  }
+
+  /** Adds a pool of RGB blending walkers that all start walking in the center of the screen.
+   * @param walkers the number of walkers in the pool.
+   * @return the pool.
+   */
+  public WalkerPool addPool( int walkers ) {
+    WalkerPool pool = new WalkerPool( WalkerPool.BLENDING, WalkerPool.RGB_SPACE, walkers );
+
+    for ( int i = 0; i < walkers; ++i )
+      pool.add( m_width / 2, m_height / 2, pool.initialColor(), .3f );
+
+    m_draw.add( pool );
+    return pool;
+  }
+
+  /** Adds a pool of RGB blending walkers spawned in bulk, see WalkerPool.spawn().
+   * @param walkers the number of walkers in the pool.
+   * @param placement places the walkers.
+   * @return the pool.
+   */
+  public WalkerPool addPool( int walkers, Placement placement ) {
+    WalkerPool pool = new WalkerPool( WalkerPool.BLENDING, WalkerPool.RGB_SPACE, walkers );
+    pool.spawn( walkers, placement, pool.initialColor(), .3f );
+
+    m_draw.add( pool );
+    return pool;
+  }
+
+  /** Adds a drawable to the end of the draw list.
+   */
+  public void add( Drawable d ) { m_draw.add( d ); }
+
+  /** Sets the canvas the walkers draw into to an array.
+   * @param pixels a width * height array of colors, in the same layout as PApplet.pixels.
+   */
+  public void setPixels( int[] pixels ) { setCanvas( new Canvas.Array( m_width, m_height, pixels ) ); }
+
+  /** Sets the canvas the walkers draw into. Blending and perturbing walkers draw into a Canvas.Hdr in float,
+   * without rounding to 8 bits on every plot.
+   * @param canvas a canvas of the engine's size.
+   */
+  public void setCanvas( Canvas canvas ) {
+    if ( canvas.width() != m_width || canvas.height() != m_height )
+      throw new IllegalArgumentException( "canvas is " + canvas.width() + "x" + canvas.height() + ", expected "
+          + m_width + "x" + m_height );
+
+    m_canvas = canvas;
+    m_hdr = canvas instanceof Canvas.Hdr ? (Canvas.Hdr)canvas : null;
+  }
+
+  public Canvas canvas() { return m_canvas; }
+
+  /** Counts the visits of the walkers to every pixel from now on, or stops counting them.
+   * @param visits a map of the engine's size, or null.
+   */
+  public void setVisits( VisitMap visits ) {
+    if ( visits != null && ( visits.width() != m_width || visits.height() != m_height ) )
+      throw new IllegalArgumentException( "visit map is " + visits.width() + "x" + visits.height() + ", expected "
+          + m_width + "x" + m_height );
+
+    m_visits = visits;
+  }
+
+  public VisitMap visits() { return m_visits; }
+
+  public int width() { return m_width; }
+
+  public int height() { return m_height; }
+
+  /** Switches the color functions between ColorKernel's integer math and the original float math.
+   * @param reference true to use the float math, kept as a reference for ColorKernel.
+   */
+  public void setReferenceColor( boolean reference ) { m_referenceColor = reference; }
+
+  /** Runs ticks on the given number of threads from now on, see ParallelTicker.
+   * @param threads the number of threads, 1 to tick on the calling thread.
+   */
+  public void setThreads( int threads ) {
+    if ( m_ticker != null )
+      m_ticker.shutdown();
+
+    m_ticker = threads > 1 ? new ParallelTicker( this, threads ) : null;
+  }
+
+  /** Returns the number of ticks run, including those before the checkpoint the engine was restored from.
+   */
+  public long ticks() { return m_ticks; }
+
+  // subframe updates
+  public void tick() {
+    ++m_ticks;
+
+    if ( m_ticker != null ) {
+      m_ticker.tick();
+      return;
+    }
+
+    // draw everything in the draw list
+    for ( Drawable d : m_draw )
+      d.draw();
+  }
+
+  /** Returns a new random stream split from the engine's, for a walker or color space to own.
+   */
+  public RandomSource newStream() { return m_rand.split(); }
+
+  /** Returns a uniformly-distributed random number on the interval [ -r, r ].
+   * @param r The radius of the distribution about 0.
+   * @return a uniformly-distributed random number on the interval [ -r, r ]
+   */
+  public int zeroMeanRandom( int r ) { return m_rand.zeroMean( r ); }
+
+  /** Wraps an x coordinate around the edges of the screen.
+   * @param n the coordinate to wrap.
+   * @return n mod width, on [0, width).
+   */
+  public int wrapX( int n ) {
+    // a power-of-two width wraps with a mask, which also handles negative n
+    return m_xmask >= 0 ? n & m_xmask : mod( n, m_width );
+  }
+
+  /** Wraps a y coordinate around the edges of the screen.
+   * @param n the coordinate to wrap.
+   * @return n mod height, on [0, height).
+   */
+  public int wrapY( int n ) {
+    return m_ymask >= 0 ? n & m_ymask : mod( n, m_height );
+  }
+
+  /** Takes the real modulus of the input.
+   * @param n the number to mod.
+   * @param mod the modulus.
+   * @return n mod mod
+   */
+  public int mod( int n, int mod ) {
+    int z = n % mod;
+    return z + ( z < 0 ? mod : 0 );
+  }
+
+  /** Perturbs the input color c by [-.Fac, .Fac] in the corresponding color.
+   * @param c the input color
+   * @param rFac the red component perturbation factor.
+   * @param rFac the red component perturbation factor.
+   * @param rFac the red component perturbation factor.
+   * @return the color with its components perturbed by up to their corresponding perturbation factor.
+   */
+  public int perturbColor( int c, int rFac, int gFac, int bFac ) { return perturbColor( m_rand, c, rFac, gFac, bFac ); }
+
+  /** Perturbs the input color c by [-.Fac, .Fac] in the corresponding color, drawing from the given stream.
+   * @param rand the randomness source to draw the perturbation from.
+   * @param c the input color
+   * @param rFac the red component perturbation factor.
+   * @param gFac the green component perturbation factor.
+   * @param bFac the blue component perturbation factor.
+   * @return the color with its components perturbed by up to their corresponding perturbation factor.
+   */
+  public int perturbColor( RandomSource rand, int c, int rFac, int gFac, int bFac ) {
+    return offsetColor( c, rand.zeroMean( rFac ), rand.zeroMean( gFac ), rand.zeroMean( bFac ) );
+  }
+
+  /** Offsets the components of the input color c, clamping them to [0, 255].
+   * @param c the input color
+   * @param dr the red component offset.
+   * @param dg the green component offset.
+   * @param db the blue component offset.
+   * @return the offset color.
+   */
+  public int offsetColor( int c, int dr, int dg, int db ) {
+    if ( !m_referenceColor )
+      return ColorKernel.offset( c, dr, dg, db );
+
+    float r = red(c);
+    float g = green(c);
+    float b = blue(c);
+
+    r += (float)dr;
+    g += (float)dg;
+    b += (float)db;
+
+    return color( range(r), range(g), range(b) );
+  }
+
+  /** Does a weighted average of c1 and c2.
+   * @param c1 The first color.
+   * @param c2 The second color.
+   * @param blend The blending factor -- should be on [0, 1].
+   * @return The average of the first and second colors weighted by the blending factor.
+   */
+  public int interpColor( int c1, int c2, float blend ) {
+    if ( !m_referenceColor )
+      return ColorKernel.blend( c1, c2, ColorKernel.weight( blend ) );
+
+    float w1 = blend;
+    float w2 = 1.0f - blend;
+
+    int r = range( w1 * red( c1 ) + w2 * red( c2 ) );
+    int g = range( w1 * green( c1 ) + w2 * green( c2 ) );
+    int b = range( w1 * blue( c1 ) + w2 * blue( c2 ) );
+
+    return color( r, g, b );
+  }
+
+  /** Does a weighted average of draw_color and current_pixel, but ignores components of draw_color that are black.
+   * @param draw_color the color to draw.
+   * @param current_pixel the color to draw onto.
+   * @param blend the blending factor.
+   * @return the average of the two colors weighted by blend, ignoring black components of draw_color.
+   */
+  public int interpColorKnockout( int draw_color, int current_pixel, float blend ) {
+    if ( !m_referenceColor )
+      return ColorKernel.blendKnockout( draw_color, current_pixel, ColorKernel.weight( blend ) );
+
+    float w1 = blend;
+    float w2 = 1.0f - blend;
+
+    int r = range( red( draw_color ) );
+    if ( r == 0 )
+      r = range( red( current_pixel ) );
+    else
+      r = range( w1 * red( draw_color ) + w2 * red( current_pixel ) );
+
+    int g = range( green( draw_color ) );
+    if ( g == 0 )
+      g = range( green( current_pixel ) );
+    else
+      g = range( w1 * green( draw_color ) + w2 * green( current_pixel ) );
+
+    int b = range( blue( draw_color ) );
+    if ( b == 0 )
+      b = range( blue( current_pixel ) );
+    else
+      b = range( w1 * blue( draw_color ) + w2 * blue( current_pixel ) );
+
+    return color( r, g, b );
+  }
+
+  /** Ensures the input is on the interval [0, 255] and rounds to the nearest int.
+   * @param f the float to check.
+   * @return f, constrained to the interval [0, 255] and rounded to the nearest integer.
+   */
+  public int range( float f ) {
+    return (int)Math.round( Math.max( 0.0f, Math.min( 255.0f, f ) ) );
+  }
+
+  /** Keeps the two channels of a yellow walk equal, copying red into green.
+   * @param c the input color.
+   * @return the color with green set to its red component and no blue.
+   */
+  public int yellow( int c ) {
+    if ( !m_referenceColor ) {
+      int r = ColorKernel.red( c );
+      return ColorKernel.pack( r, r, 0 );
+    }
+
+    return color( red( c ), red( c ), 0 );
+  }
+
+  //===========================================================
+  //====================== DIRTY REGIONS ======================
+  //===========================================================
+
+  // the side of the tiles dirty regions are tracked in, a power of two
+  public final static int DIRTY_TILE = 64;
+  final static int DIRTY_SHIFT = 6;
+
+  // the flags of a tile drawn since the last dirtyBounds(), and since the last takeDirtyTiles()
+  final static byte DIRTY_SHOWN = 1;
+  final static byte DIRTY_SAVED = 2;
+  final static byte DIRTY = DIRTY_SHOWN | DIRTY_SAVED;
+
+  /** Starts or stops recording which parts of the canvas the walkers draw into, see dirtyBounds(). Starting
+   * while already recording keeps what was recorded.
+   * @param track true to record them.
+   */
+  public void setTrackDirty( boolean track ) {
+    if ( track && m_dirty != null )
+      return;
+
+    m_dirtyCols = ( m_width + DIRTY_TILE - 1 ) >> DIRTY_SHIFT;
+    m_dirty = track ? new byte[ m_dirtyCols * ( ( m_height + DIRTY_TILE - 1 ) >> DIRTY_SHIFT ) ] : null;
+  }
+
+  /** Records that the pixel at x, y was drawn, in the dirty tiles and the visit counts. Cheap enough to call on
+   * every plot.
+   */
+  final void touch( int x, int y ) {
+    byte[] dirty = m_dirty;
+    if ( dirty != null )
+      dirty[ ( y >> DIRTY_SHIFT ) * m_dirtyCols + ( x >> DIRTY_SHIFT ) ] = DIRTY;
+
+    VisitMap visits = m_visits;
+    if ( visits != null )
+      visits.visit( y * m_width + x );
+  }
+
+  /** Records that the whole canvas changed, for changes made to it outside the walkers, such as clearing it.
+   * Must not be called during a tick.
+   */
+  public void touchAll() {
+    if ( m_dirty != null )
+      Arrays.fill( m_dirty, DIRTY );
+  }
+
+  /** Returns the bounding box of the tiles drawn into since the last call, and starts recording anew.
+   * Must not be called during a tick.
+   * @param rect receives x, y, width and height of the box, clipped to the canvas.
+   * @return false if nothing was drawn (or dirty regions are not tracked), leaving rect as it was.
+   */
+  public boolean dirtyBounds( int[] rect ) {
+    if ( m_dirty == null )
+      return false;
+
+    int x0 = Integer.MAX_VALUE, y0 = Integer.MAX_VALUE, x1 = -1, y1 = -1;
+    for ( int t = 0; t < m_dirty.length; ++t ) {
+      if ( ( m_dirty[t] & DIRTY_SHOWN ) == 0 )
+        continue;
+
+      int tx = t % m_dirtyCols;
+      int ty = t / m_dirtyCols;
+      x0 = Math.min( x0, tx );
+      x1 = Math.max( x1, tx );
+      y0 = Math.min( y0, ty );
+      y1 = Math.max( y1, ty );
+      m_dirty[t] &= ~DIRTY_SHOWN;
+    }
+
+    if ( x1 < 0 )
+      return false;
+
+    rect[0] = x0 << DIRTY_SHIFT;
+    rect[1] = y0 << DIRTY_SHIFT;
+    rect[2] = Math.min( ( x1 + 1 ) << DIRTY_SHIFT, m_width ) - rect[0];
+    rect[3] = Math.min( ( y1 + 1 ) << DIRTY_SHIFT, m_height ) - rect[1];
+    return true;
+  }
+
+  /** Collects the tiles drawn into since the last call, for incremental checkpoints, and starts collecting anew.
+   * Independent of dirtyBounds(). Must not be called during a tick.
+   * @param tiles receives the indices of the tiles, y * columns + x in tiles, with room for every tile.
+   * @return the number of tiles, 0 if dirty regions are not tracked.
+   */
+  int takeDirtyTiles( int[] tiles ) {
+    if ( m_dirty == null )
+      return 0;
+
+    int n = 0;
+    for ( int t = 0; t < m_dirty.length; ++t ) {
+      if ( ( m_dirty[t] & DIRTY_SAVED ) != 0 ) {
+        tiles[ n++ ] = t;
+        m_dirty[t] &= ~DIRTY_SAVED;
+      }
+    }
+
+    return n;
+  }
+
+  //===========================================================
+  //==================== COLOR FUNCTIONS ======================
+  //===========================================================
+
+  // these mirror PApplet's color functions in the default colorMode( RGB, 255 ), so walkers behave the same
+  // with or without a PApplet behind them.
+
+  /** Returns the red component of c on [0, 255]. */
+  public float red( int c ) { return ( c >> 16 ) & 0xff; }
+
+  /** Returns the green component of c on [0, 255]. */
+  public float green( int c ) { return ( c >> 8 ) & 0xff; }
+
+  /** Returns the blue component of c on [0, 255]. */
+  public float blue( int c ) { return c & 0xff; }
+
+  /** Packs the components, clamped to [0, 255], into an opaque color. */
+  public int color( int r, int g, int b ) {
+    r = Math.max( 0, Math.min( 255, r ) );
+    g = Math.max( 0, Math.min( 255, g ) );
+    b = Math.max( 0, Math.min( 255, b ) );
+
+    return 0xff000000 | ( r << 16 ) | ( g << 8 ) | b;
+  }
+
+  /** Packs the components, clamped to [0, 255] and truncated, into an opaque color. */
+  public int color( float r, float g, float b ) { return color( (int)r, (int)g, (int)b ); }
+}
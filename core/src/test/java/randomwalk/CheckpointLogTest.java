@@ -0,0 +1,96 @@
+package randomwalk;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that a checkpoint log resumes from its last complete record, HDR canvases included, and skips a record
+ * torn by a crash.
+ */
+public class CheckpointLogTest {
+  @TempDir
+  File m_dir;
+
+  /** Writes a log with a base record at tick 2000 and records appended at ticks 4000 and 6000.
+   */
+  static void writeLog( File file ) throws IOException {
+    WalkEngine engine = CheckpointTest.engine( RandomSource.DEFAULT, 100 );
+    CheckpointTest.run( engine, 2000 );
+
+    try ( CheckpointLog log = new CheckpointLog( engine, file ) ) {
+      CheckpointTest.run( engine, 2000 );
+      log.append();
+      CheckpointTest.run( engine, 2000 );
+      log.append();
+
+      // a compaction would leave nothing to tear
+      assertTrue( log.m_appended > 0, "the log was compacted" );
+    }
+  }
+
+  /** Asserts that an engine resumed from the log is in the state of a walk that ran the given ticks.
+   */
+  static void assertResumesAt( File file, int ticks ) throws IOException {
+    WalkEngine resumed = CheckpointTest.engine( RandomSource.DEFAULT, 100 );
+    Checkpoint.read( resumed, file );
+
+    WalkEngine expected = CheckpointTest.engine( RandomSource.DEFAULT, 100 );
+    CheckpointTest.run( expected, ticks );
+
+    assertEquals( ticks, resumed.ticks() );
+    assertArrayEquals( CheckpointTest.pixels( expected ), CheckpointTest.pixels( resumed ) );
+
+    // and goes on as if it had never stopped
+    CheckpointTest.run( resumed, 1000 );
+    CheckpointTest.run( expected, 1000 );
+    assertArrayEquals( CheckpointTest.pixels( expected ), CheckpointTest.pixels( resumed ) );
+  }
+
+  @Test
+  public void resumesFromTheLastRecord() throws IOException {
+    File file = new File( m_dir, "walk.log" );
+    writeLog( file );
+
+    assertResumesAt( file, 6000 );
+  }
+
+  @Test
+  public void skipsATornRecord() throws IOException {
+    File file = new File( m_dir, "walk.log" );
+    writeLog( file );
+
+    // cuts the CRC and the end of the data off the last record, as a crash while appending would
+    try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) ) {
+      raf.setLength( raf.length() - 10 );
+    }
+
+    assertResumesAt( file, 4000 );
+  }
+
+  @Test
+  public void resumesAnHdrCanvas() throws IOException {
+    File file = new File( m_dir, "walk.log" );
+
+    WalkEngine engine = CheckpointTest.engine( RandomSource.DEFAULT, 100, new Canvas.Hdr( 256, 256 ) );
+    try ( CheckpointLog log = new CheckpointLog( engine, file ) ) {
+      CheckpointTest.run( engine, 2000 );
+      log.append();
+    }
+
+    Canvas.Hdr resumed = new Canvas.Hdr( 256, 256 );
+    Checkpoint.read( CheckpointTest.engine( RandomSource.DEFAULT, 100, resumed ), file );
+
+    Canvas.Hdr expected = (Canvas.Hdr)engine.canvas();
+    assertArrayEquals( expected.m_r, resumed.m_r );
+    assertArrayEquals( expected.m_g, resumed.m_g );
+    assertArrayEquals( expected.m_b, resumed.m_b );
+  }
+}
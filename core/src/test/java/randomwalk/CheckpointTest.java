@@ -0,0 +1,128 @@
+package randomwalk;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks that a walk resumed from a checkpoint renders the canvas of one that never stopped, on a color or an HDR
+ * canvas, and that checkpoints of other walks are refused.
+ */
+public class CheckpointTest {
+  final static long SEED = 3;
+  final static int SIDE = 256;
+
+  @TempDir
+  File m_dir;
+
+  /** Returns an engine on a black array canvas with the default walkers and a pool, set up the same way each
+   * time.
+   */
+  static WalkEngine engine( String source, int pool ) {
+    int[] pixels = new int[ SIDE * SIDE ];
+    Arrays.fill( pixels, 0xff000000 );
+
+    return engine( source, pool, new Canvas.Array( SIDE, SIDE, pixels ) );
+  }
+
+  /** Returns an engine like engine( source, pool ) on the given canvas.
+   */
+  static WalkEngine engine( String source, int pool, Canvas canvas ) {
+    WalkEngine engine = new WalkEngine( RandomSource.create( source, SEED ), SIDE, SIDE );
+    engine.setCanvas( canvas );
+
+    engine.addDefaultWalkers();
+    engine.addPool( pool );
+    return engine;
+  }
+
+  static int[] pixels( WalkEngine engine ) { return ( (Canvas.Array)engine.canvas() ).pixels(); }
+
+  static void run( WalkEngine engine, int ticks ) {
+    for ( int i = 0; i < ticks; ++i )
+      engine.tick();
+  }
+
+  @Test
+  public void resumedWalkMatchesUninterruptedRun() throws IOException {
+    File file = new File( m_dir, "walk.ck" );
+
+    WalkEngine first = engine( RandomSource.DEFAULT, 100 );
+    run( first, 5000 );
+    Checkpoint.write( first, file );
+
+    WalkEngine resumed = engine( RandomSource.DEFAULT, 100 );
+    Checkpoint.read( resumed, file );
+    assertEquals( 5000, resumed.ticks() );
+    run( resumed, 5000 );
+
+    WalkEngine uninterrupted = engine( RandomSource.DEFAULT, 100 );
+    run( uninterrupted, 10000 );
+
+    assertEquals( uninterrupted.ticks(), resumed.ticks() );
+    assertArrayEquals( pixels( uninterrupted ), pixels( resumed ) );
+  }
+
+  @Test
+  public void resumedHdrWalkMatchesUninterruptedRun() throws IOException {
+    File file = new File( m_dir, "walk.ck" );
+
+    WalkEngine first = engine( RandomSource.DEFAULT, 100, new Canvas.Hdr( SIDE, SIDE ) );
+    run( first, 5000 );
+    Checkpoint.write( first, file );
+
+    Canvas.Hdr resumed = new Canvas.Hdr( SIDE, SIDE );
+    WalkEngine engine = engine( RandomSource.DEFAULT, 100, resumed );
+    Checkpoint.read( engine, file );
+    run( engine, 5000 );
+
+    Canvas.Hdr uninterrupted = new Canvas.Hdr( SIDE, SIDE );
+    run( engine( RandomSource.DEFAULT, 100, uninterrupted ), 10000 );
+
+    // the floats, not only the colors they round to
+    assertArrayEquals( uninterrupted.m_r, resumed.m_r );
+    assertArrayEquals( uninterrupted.m_g, resumed.m_g );
+    assertArrayEquals( uninterrupted.m_b, resumed.m_b );
+  }
+
+  @Test
+  public void refusesHdrIntoColors() throws IOException {
+    File file = new File( m_dir, "walk.ck" );
+
+    WalkEngine engine = engine( RandomSource.DEFAULT, 10, new Canvas.Hdr( SIDE, SIDE ) );
+    run( engine, 100 );
+    Checkpoint.write( engine, file );
+
+    assertThrows( IOException.class, () -> Checkpoint.read( engine( RandomSource.DEFAULT, 10 ), file ) );
+  }
+
+  @Test
+  public void refusesAnotherRandomSource() throws IOException {
+    File file = new File( m_dir, "walk.ck" );
+
+    WalkEngine engine = engine( "xoroshiro", 10 );
+    run( engine, 100 );
+    Checkpoint.write( engine, file );
+
+    assertThrows( IOException.class, () -> Checkpoint.read( engine( "pcg", 10 ), file ) );
+    assertThrows( IOException.class, () -> Checkpoint.read( engine( "sliced-xoroshiro", 10 ), file ) );
+  }
+
+  @Test
+  public void refusesOtherWalkers() throws IOException {
+    File file = new File( m_dir, "walk.ck" );
+
+    WalkEngine engine = engine( RandomSource.DEFAULT, 10 );
+    run( engine, 100 );
+    Checkpoint.write( engine, file );
+
+    assertThrows( IOException.class, () -> Checkpoint.read( engine( RandomSource.DEFAULT, 20 ), file ) );
+  }
+}
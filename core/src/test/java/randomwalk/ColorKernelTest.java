@@ -0,0 +1,90 @@
+package randomwalk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks ColorKernel against the float color math of WalkEngine, kept as its reference.
+ */
+public class ColorKernelTest {
+  final static int SAMPLES = 200000;
+
+  WalkEngine m_reference = referenceEngine();
+  RandomSource m_rand = new RandomSource.Xoroshiro( 8 );
+
+  static WalkEngine referenceEngine() {
+    WalkEngine engine = new WalkEngine( new RandomSource.Xoroshiro( 0 ), 1, 1 );
+    engine.setReferenceColor( true );
+    return engine;
+  }
+
+  int randomColor() { return 0xff000000 | m_rand.nextInt(); }
+
+  float randomBlend() { return m_rand.nextInt( 1 << 24 ) / (float)( 1 << 24 ); }
+
+  /** Asserts that every channel of c is within one step of rounding of the same channel of expected.
+   */
+  static void assertWithinRounding( int expected, int c, String what ) {
+    assertEquals( 0xff, c >>> 24, what + " alpha" );
+    for ( int shift = 0; shift < 24; shift += 8 ) {
+      int d = ( ( c >> shift ) & 0xff ) - ( ( expected >> shift ) & 0xff );
+      assertTrue( Math.abs( d ) <= 1,
+          what + ": " + Integer.toHexString( c ) + ", expected " + Integer.toHexString( expected ) );
+    }
+  }
+
+  @Test
+  public void offsetMatchesReferenceExactly() {
+    for ( int i = 0; i < SAMPLES; ++i ) {
+      int c = randomColor();
+      int dr = m_rand.zeroMean( 300 );
+      int dg = m_rand.zeroMean( 300 );
+      int db = m_rand.zeroMean( 300 );
+
+      assertEquals( m_reference.offsetColor( c, dr, dg, db ), ColorKernel.offset( c, dr, dg, db ) );
+    }
+  }
+
+  @Test
+  public void blendMatchesReferenceWithinRounding() {
+    for ( int i = 0; i < SAMPLES; ++i ) {
+      int c1 = randomColor();
+      int c2 = randomColor();
+      float blend = randomBlend();
+
+      assertWithinRounding( m_reference.interpColor( c1, c2, blend ),
+          ColorKernel.blend( c1, c2, ColorKernel.weight( blend ) ), "blend at " + blend );
+    }
+  }
+
+  @Test
+  public void blendKnockoutMatchesReferenceWithinRounding() {
+    for ( int i = 0; i < SAMPLES; ++i ) {
+      // black channels are the point of the knockout, so clear a random set of them
+      int c1 = randomColor();
+      int black = m_rand.nextInt( 8 );
+      for ( int channel = 0; channel < 3; ++channel )
+        if ( ( black & ( 1 << channel ) ) != 0 )
+          c1 &= ~( 0xff << ( channel * 8 ) );
+
+      int c2 = randomColor();
+      float blend = randomBlend();
+
+      assertWithinRounding( m_reference.interpColorKnockout( c1, c2, blend ),
+          ColorKernel.blendKnockout( c1, c2, ColorKernel.weight( blend ) ), "knockout blend at " + blend );
+    }
+  }
+
+  @Test
+  public void blendKeepsTheEnds() {
+    for ( int i = 0; i < SAMPLES; ++i ) {
+      int c1 = randomColor();
+      int c2 = randomColor();
+
+      assertEquals( c1, ColorKernel.blend( c1, c2, ColorKernel.weight( 1 ) ) );
+      assertEquals( c2, ColorKernel.blend( c1, c2, ColorKernel.weight( 0 ) ) );
+    }
+  }
+}
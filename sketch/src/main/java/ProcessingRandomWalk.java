@@ -0,0 +1,503 @@
+import processing.core.*; 
+import processing.data.*; 
+import processing.event.*; 
+import processing.opengl.*; 
+
+import randomwalk.*; 
+
+import java.util.HashMap; 
+import java.util.ArrayList; 
+import java.io.File; 
+import java.io.BufferedReader; 
+import java.io.PrintWriter; 
+import java.io.InputStream; 
+import java.io.OutputStream; 
+import java.io.IOException; 
+
+/**
+ * @author Michael Burns - m@cs.brown.edu
+ * 2 May 2013
+ */
+public class ProcessingRandomWalk extends PApplet {
+  final static int UPDATES_PER_FRAME = 750;
+
+  // simulation time budget per frame in milliseconds, leaving the rest of a 60 fps frame for display.
+  // pass --budget <ms> to change it, or --budget 0 to run a fixed UPDATES_PER_FRAME ticks per frame.
+  final static float DEFAULT_BUDGET_MS = 14;
+
+  // the simulation the walkers live in
+  WalkEngine m_engine;
+
+  // the canvas the walkers draw into. It is the only copy of the walk; the display is written from it and never
+  // read back, so draw() needs no loadPixels().
+  PImage m_canvas;
+
+  // the canvas the walkers draw into instead with --hdr, tone mapped into m_canvas as it is shown; null otherwise
+  Canvas.Hdr m_hdr;
+
+  // the region of the canvas drawn this frame, and a reused image to upload it through
+  int[] m_dirty = new int[ 4 ];
+  PImage m_region;
+
+  // ticks the engine in the background with --sim-thread, and the frame of it on display; null otherwise
+  SimulationThread m_sim;
+  SimulationThread.Frame m_frame;
+
+  // encodes snapshots in the background, at the --png-level deflate level
+  SnapshotSaver m_snapshots;
+
+  // the visit counts tone mapped for a heatmap snapshot, with --heatmap
+  int[] m_heatmap;
+
+  // where to write checkpoints with --checkpoint, or null, the log they go to with --incremental, and when to
+  // write the next one
+  File m_checkpoint;
+  CheckpointLog m_log;
+  int m_checkpointMillis;
+  int m_nextCheckpoint;
+
+  // records frames with --record, and how many frames apart
+  Recorder m_recorder;
+  int m_recordEvery;
+
+  // whether the display is OpenGL (--renderer p2d), which streams the canvas into a texture instead
+  boolean m_opengl;
+
+  // the tick scheduler state
+  long m_budgetNanos;
+  int m_ticksPerFrame;
+  double m_tickNanos;
+
+  //===========================================================
+  //===================== WALKER CLASSES ======================
+  //===========================================================
+
+  /** Performs a random walk and replaces the current pixel with a color proportional to the current
+   * mouse position in the window.
+   */
+  public class MousePen extends WalkEngine.RandomWalk {
+    public MousePen( int x, int y ) {
+      m_engine.super( x, y, WalkEngine.X_WALK, WalkEngine.Y_WALK );
+    }
+
+    public void move( int b ) { update(); }
+
+    public void plot( int i ) {
+      setCurrentPixel( color( 0, scaleByScreen( mouseX, width ), scaleByScreen( mouseY, height ) ) );
+    }
+
+    public int scaleByScreen( int n, int side ) {
+      return ( n * 255 ) / side;
+    }
+  }
+
+  //===========================================================
+  //======== PROCESSING INTERNALS AND CLASS FUNCTIONS =========
+  //===========================================================
+
+  // setup for the class
+  public void setup() {
+    // pass --width and --height to change the canvas size, and --renderer p2d to display through OpenGL
+    m_opengl = argument( "--renderer", "java2d" ).equals( "p2d" );
+    size( Integer.parseInt( argument( "--width", "" + WalkEngine.SIDE ) ),
+          Integer.parseInt( argument( "--height", "" + WalkEngine.SIDE ) ), m_opengl ? P2D : JAVA2D );
+    background( 0 );
+
+    // uncomment this to change the framerate
+    //frameRate( 4 );
+
+    m_budgetNanos = (long)( Float.parseFloat( argument( "--budget", "" + DEFAULT_BUDGET_MS ) ) * 1000000 );
+    m_ticksPerFrame = UPDATES_PER_FRAME;
+    m_tickNanos = 0;
+
+    // initializing the simulation and its draw list
+    long seed = Long.parseLong( argument( "--seed", "" + System.nanoTime() ) );
+    println( "seed " + seed );
+
+    m_engine = new WalkEngine( RandomSource.create( argument( "--rng", RandomSource.DEFAULT ), seed ), width, height );
+
+    // pass --scene file to run the walkers of a scene file, see Scene
+    String scene = argument( "--scene", null );
+    if ( scene == null ) {
+      m_engine.addDefaultWalkers();
+    } else {
+      try {
+        Scene.apply( m_engine, Scene.read( new File( scene ) ) );
+      } catch ( IOException | IllegalArgumentException e ) {
+        println( "could not read " + scene + ": " + e.getMessage() );
+        exit();
+        return;
+      }
+    }
+
+    m_engine.setThreads( Integer.parseInt( argument( "--threads", "1" ) ) );
+    m_engine.setReferenceColor( flag( "--float-color" ) );
+    m_engine.setTrackDirty( true );
+
+    m_canvas = createImage( width, height, RGB );
+    clearCanvas();
+
+    // pass --hdr to blend in float, see Canvas.Hdr, and round to colors only for the display
+    if ( flag( "--hdr" ) ) {
+      m_hdr = new Canvas.Hdr( width, height );
+      m_engine.setCanvas( m_hdr );
+    } else {
+      m_engine.setPixels( m_canvas.pixels );
+    }
+//    m_engine.add( new MousePen( width / 2, height / 2 ) );
+
+    // pass --resume file to continue from a checkpoint, with the same --scene, --rng and size it was written with
+    String resume = argument( "--resume", null );
+    if ( resume != null ) {
+      // checkpoints do not hold the visit counts, so a resumed heatmap would miss every visit before it
+      if ( flag( "--heatmap" ) ) {
+        println( "cannot resume with --heatmap: checkpoints do not hold the visit counts" );
+        exit();
+        return;
+      }
+
+      try {
+        Checkpoint.read( m_engine, new File( resume ) );
+        println( "resumed at step " + m_engine.ticks() );
+      } catch ( IOException | UnsupportedOperationException e ) {
+        // exit() only stops the sketch after setup() returns, and the engine may be partly restored, so return
+        // before m_checkpoint is set and dispose() would write it over a good checkpoint
+        println( "could not resume from " + resume + ": " + e.getMessage() );
+        exit();
+        return;
+      }
+
+      if ( m_hdr != null )
+        m_hdr.toneMap( m_canvas.pixels, 0, 0, width, height );
+      updateRegion( 0, 0, width, height );
+    }
+
+    // pass --checkpoint file to write one when k is pressed, on exit and every --checkpoint-every seconds, and
+    // --incremental to append only the tiles drawn since the last one to a log, see CheckpointLog
+    String checkpoint = argument( "--checkpoint", null );
+    if ( checkpoint != null ) {
+      m_checkpoint = new File( checkpoint );
+
+      if ( flag( "--incremental" ) ) {
+        try {
+          m_log = new CheckpointLog( m_engine, m_checkpoint );
+        } catch ( IOException | RuntimeException e ) {
+          println( "could not checkpoint to " + checkpoint + ": " + e.getMessage() );
+          m_checkpoint = null;
+        }
+      }
+
+      m_checkpointMillis = (int)( Float.parseFloat( argument( "--checkpoint-every", "0" ) ) * 1000 );
+      m_nextCheckpoint = millis() + m_checkpointMillis;
+    }
+
+    // pass --heatmap to count the visits to every pixel, in --visits ints or shorts, and save them as a heatmap
+    // when h is pressed, see VisitMap. The map is set before the simulation thread starts, which counts into it.
+    if ( flag( "--heatmap" ) ) {
+      m_engine.setVisits( VisitMap.create( argument( "--visits", "ints" ), width, height ) );
+      m_heatmap = new int[ width * height ];
+    }
+
+    // pass --sim-thread to tick on a background thread and show the frames it publishes, instead of ticking in
+    // draw() within the frame budget
+    if ( flag( "--sim-thread" ) ) {
+      m_sim = new SimulationThread( m_engine );
+      m_frame = m_sim.front();
+      m_canvas.pixels = m_frame.m_pixels;
+      m_sim.start();
+    }
+
+    m_snapshots = new SnapshotSaver( Integer.parseInt( argument( "--png-level", "" + SnapshotSaver.DEFAULT_LEVEL ) ) );
+
+    // pass --record dir or --record video.mp4 to record every --record-every frames in the background, see
+    // Recorder. Frames are dropped while the encoder is behind unless --record-policy block is passed.
+    String record = argument( "--record", null );
+    if ( record != null ) {
+      m_recordEvery = Integer.parseInt( argument( "--record-every", "1" ) );
+      int policy = argument( "--record-policy", "drop" ).equals( "block" ) ? Recorder.BLOCK : Recorder.DROP;
+
+      try {
+        Recorder.Sink sink = Recorder.create( record, width, height, Integer.parseInt( argument( "--fps", "30" ) ),
+            Integer.parseInt( argument( "--png-level", "" + SnapshotSaver.DEFAULT_LEVEL ) ) );
+        m_recorder = new Recorder( sink, width * height, 4, policy );
+      } catch ( IOException e ) {
+        println( "could not record to " + record + ": " + e.getMessage() );
+      }
+    }
+  }
+
+  // this is called every frame
+  public void draw() {
+    if ( m_sim != null )
+      showFrame();
+    else
+      tickFrame();
+
+    // OpenGL redraws every frame, from the canvas texture
+    if ( m_opengl )
+      image( m_canvas, 0, 0 );
+
+    if ( m_checkpointMillis > 0 && millis() >= m_nextCheckpoint ) {
+      checkpoint();
+      m_nextCheckpoint = millis() + m_checkpointMillis;
+    }
+
+    if ( m_recorder != null && frameCount % m_recordEvery == 0 ) {
+      try {
+        m_recorder.offer( m_canvas.pixels );
+      } catch ( IOException e ) {
+        println( "recording stopped: " + e.getMessage() );
+        m_recorder = null;
+      }
+    }
+  }
+
+  /** Runs this frame's ticks and shows what they drew.
+   */
+  void tickFrame() {
+    long start = System.nanoTime();
+
+    for ( int i = 0; i < m_ticksPerFrame; ++i )
+      m_engine.tick();
+
+    scheduleTicks( System.nanoTime() - start );
+
+    // sets the display to the updated part of the canvas
+    if ( m_engine.dirtyBounds( m_dirty ) ) {
+      if ( m_hdr != null )
+        m_hdr.toneMap( m_canvas.pixels, m_dirty[0], m_dirty[1], m_dirty[2], m_dirty[3] );
+      updateRegion( m_dirty[0], m_dirty[1], m_dirty[2], m_dirty[3] );
+    }
+  }
+
+  /** Shows the latest frame of the simulation thread, if it published one since the last call.
+   */
+  void showFrame() {
+    SimulationThread.Frame frame = m_sim.poll( m_frame );
+    if ( frame == null )
+      return;
+
+    m_frame = frame;
+    m_canvas.pixels = frame.m_pixels;
+
+    int[] r = frame.m_region;
+    if ( r[2] > 0 )
+      updateRegion( r[0], r[1], r[2], r[3] );
+  }
+
+  /** Uploads a region of the canvas to the display.
+   *
+   * Under OpenGL the region is marked modified on the canvas image, and the renderer streams just that region
+   * into the image's texture with glTexSubImage2D the next time the image is drawn.
+   *
+   * The Java2D renderer of Processing 2 ignores the region given to updatePixels( x, y, w, h ) and uploads the
+   * whole canvas, so there the region is copied into an image and set().
+   */
+  void updateRegion( int x, int y, int w, int h ) {
+    if ( m_opengl ) {
+      m_canvas.updatePixels( x, y, w, h );
+      return;
+    }
+
+    if ( w == width && h == height ) {
+      set( 0, 0, m_canvas );
+      return;
+    }
+
+    if ( m_region == null || m_region.width != w || m_region.height != h )
+      m_region = createImage( w, h, RGB );
+
+    for ( int row = 0; row < h; ++row )
+      System.arraycopy( m_canvas.pixels, ( y + row ) * width + x, m_region.pixels, row * w, w );
+
+    set( x, y, m_region );
+  }
+
+  /** Picks the number of ticks for the next frame so that they fit in the frame budget.
+   * @param elapsed the time in nanoseconds the ticks of this frame took.
+   */
+  void scheduleTicks( long elapsed ) {
+    if ( m_budgetNanos <= 0 )
+      return;
+
+    // smooth the per-tick cost so one slow frame (gc, jit) doesn't collapse the rate
+    double cost = (double)elapsed / m_ticksPerFrame;
+    m_tickNanos = m_tickNanos == 0 ? cost : 0.8 * m_tickNanos + 0.2 * cost;
+
+    // grow at most 2x per frame, the first frames run interpreted and overestimate the cost of later ones
+    long next = (long)( m_budgetNanos / m_tickNanos );
+    m_ticksPerFrame = (int)Math.max( 1, Math.min( next, Math.min( 2L * m_ticksPerFrame, Integer.MAX_VALUE ) ) );
+  }
+
+  /** Returns the value passed after the named option on the command line.
+   * @param name the option, e.g. --budget.
+   * @param fallback the value to return if the option was not passed.
+   */
+  String argument( String name, String fallback ) {
+    if ( args != null )
+      for ( int i = 0; i + 1 < args.length; ++i )
+        if ( args[i].equals( name ) )
+          return args[ i + 1 ];
+
+    return fallback;
+  }
+
+  /** Returns whether the named option was passed on the command line.
+   * @param name the option, e.g. --sim-thread.
+   */
+  boolean flag( String name ) {
+    if ( args != null )
+      for ( String arg : args )
+        if ( arg.equals( name ) )
+          return true;
+
+    return false;
+  }
+
+  /** Clears the canvas to opaque black and shows it.
+   */
+  void clearCanvas() {
+    if ( m_sim != null ) {
+      m_sim.clear();
+      return;
+    }
+
+    java.util.Arrays.fill( m_canvas.pixels, 0xff000000 );
+    if ( m_hdr != null )
+      m_hdr.clear();
+    m_engine.touchAll();
+    updateRegion( 0, 0, width, height );
+  }
+
+  /** Writes a checkpoint of the walk to the --checkpoint file, between two batches of the simulation thread if
+   * there is one.
+   */
+  void checkpoint() {
+    if ( m_checkpoint == null )
+      return;
+
+    if ( m_sim == null ) {
+      writeCheckpoint();
+      return;
+    }
+
+    m_sim.between( new Runnable() {
+      public void run() { writeCheckpoint(); }
+    } );
+  }
+
+  void writeCheckpoint() {
+    try {
+      if ( m_log != null )
+        m_log.append();
+      else
+        Checkpoint.write( m_engine, m_checkpoint );
+      println( "checkpoint at step " + m_engine.ticks() );
+    } catch ( IOException | RuntimeException e ) {
+      println( "could not checkpoint to " + m_checkpoint + ": " + e.getMessage() );
+    }
+  }
+
+  /** Saves the visit counts as a heatmap, tone mapped between two batches of the simulation thread if there is
+   * one.
+   */
+  void saveHeatmap() {
+    if ( m_heatmap == null )
+      return;
+
+    final File file = new File( savePath( "heatmap-" + System.currentTimeMillis() + ".png" ) );
+    Runnable task = new Runnable() {
+      public void run() {
+        m_engine.visits().toneMap( m_heatmap, VisitMap.heat() );
+        m_snapshots.save( m_heatmap, width, height, file );
+      }
+    };
+
+    if ( m_sim != null )
+      m_sim.between( task );
+    else
+      task.run();
+  }
+
+  // save the current canvas when 's' is pressed, clear when c is pressed, checkpoint when k is pressed and save
+  // the heatmap when h is pressed.
+  public void keyPressed() {
+    switch ( key ) {
+      case 'c':
+        clearCanvas();
+        break;
+      case 's':
+        m_snapshots.save( m_canvas.pixels, width, height, new File( savePath( System.currentTimeMillis() + ".png" ) ) );
+        break;
+      case 'k':
+        checkpoint();
+        break;
+      case 'h':
+        saveHeatmap();
+        break;
+      case 'q':
+        exit();
+        break;
+      default:
+        break;
+    }
+  }
+
+  // finishes the recording and writes a last checkpoint on exit
+  public void dispose() {
+    if ( m_checkpoint != null ) {
+      try {
+        if ( m_sim != null )
+          m_sim.shutdown();
+
+        writeCheckpoint();
+        if ( m_log != null )
+          m_log.close();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+      } catch ( IOException e ) {
+        println( "could not close " + m_checkpoint + ": " + e.getMessage() );
+      }
+
+      m_checkpoint = null;
+    }
+
+    if ( m_recorder != null ) {
+      try {
+        m_recorder.close();
+        println( m_recorder.recorded() + " frames recorded, " + m_recorder.dropped() + " dropped" );
+      } catch ( IOException e ) {
+        println( "could not finish the recording: " + e.getMessage() );
+      }
+
+      m_recorder = null;
+    }
+
+    // setup() returns before creating the saver if it could not resume
+    if ( m_snapshots != null ) {
+      try {
+        m_snapshots.shutdown();
+      } catch ( InterruptedException e ) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    super.dispose();
+  }
+
+  static public void main(String[] passedArgs) {
+    // --headless renders without a window, see HeadlessRenderer
+    if (passedArgs != null && passedArgs.length > 0 && passedArgs[0].equals("--headless")) {
+      HeadlessRenderer.main(passedArgs);
+      return;
+    }
+
+    String[] appletArgs = new String[] { "ProcessingRandomWalk" };
+
+    if (passedArgs != null) {
+      PApplet.main(concat(appletArgs, passedArgs));
+    } else {
+      PApplet.main(appletArgs);
+    }
+  }
+}